@@ -8,10 +8,48 @@ import synth.core.*;
 import synth.util.FileUtils;
 import synth.util.Parser;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Main {
+    /**
+     * time given to the synthesis of a single spec file
+     */
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    /**
+     * threads of the portfolio of {@link #newSynthesizer}
+     */
+    private static final int RACERS = 2;
+    /**
+     * rough memory of a bank entry or worklist node, to share the heap between the jobs of a batch
+     */
+    private static final long ENTRY_BYTES = 512;
+    private static final String BATCH_USAGE =
+            "usage: --batch [--jobs N] [--timeout SECONDS] [--entries N] [--out FILE] DIR_OR_FILE...";
+
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            try {
+                batch(Arrays.asList(args).subList(1, args.length), System.out);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.err.println(BATCH_USAGE);
+                System.exit(2);
+            }
+            return;
+        }
         // String examplesFilePath = "examples.txt";
         String examplesFilePath = args[0];
         List<String> lines = FileUtils.readLinesFromFile(examplesFilePath);
@@ -19,10 +57,156 @@ public class Main {
         List<Example> examples = Parser.parseAllExamples(lines);
         // read the CFG
         CFG cfg = buildCFG();
-        ISynthesizer synthesizer = new DivAndConSynthesizer();
-        Program program = synthesizer.synthesize(cfg, examples);
+        SynthesisResult result = newSynthesizer().synthesize(cfg, examples, Budget.ofTimeout(TIMEOUT));
+        Program program = result.isSolved() ? result.getProgram() : null;
         System.out.println(program);
+    }
+
+    /**
+     * Synthesize many spec files in one process:
+     * --batch [--jobs N] [--timeout SECONDS] [--entries N] [--out FILE] DIR_OR_FILE...
+     * A directory stands for the files it contains. The synthesis uses at most N threads (default: the number of
+     * processors), a file taking one per synthesizer of its portfolio. Every synthesizer runs under a timeout
+     * (default: none) and a maximum number of bank entries or worklist nodes (default: the share of the heap of its
+     * thread). One line per file is written to FILE (default: standard output) in the order of the arguments: the
+     * file, the status, the time in milliseconds and the program, or the error message, separated by tabs.
+     *
+     * @param stdout where to write the lines without --out
+     * @throws IllegalArgumentException if the arguments are invalid
+     */
+    static void batch(List<String> args, PrintStream stdout) {
+        int jobs = Runtime.getRuntime().availableProcessors();
+        Duration timeout = null;
+        Long entries = null;
+        String out = null;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.size(); ++i) {
+            String arg = args.get(i);
+            switch (arg) {
+                case "--jobs":
+                    jobs = Integer.parseInt(optionValue(args, ++i, arg));
+                    break;
+                case "--timeout":
+                    timeout = Duration.ofMillis((long) (Double.parseDouble(optionValue(args, ++i, arg)) * 1000));
+                    break;
+                case "--entries":
+                    entries = Long.parseLong(optionValue(args, ++i, arg));
+                    break;
+                case "--out":
+                    out = optionValue(args, ++i, arg);
+                    break;
+                default:
+                    files.addAll(specFiles(Paths.get(arg)));
+                    break;
+            }
+        }
+        if (jobs < 1 || entries != null && entries < 1) {
+            throw new IllegalArgumentException("--jobs and --entries must be positive");
+        }
+        int threads = Math.min(jobs, RACERS);
+        int concurrentJobs = Math.max(1, jobs / RACERS);
+        long maxEntries = entries != null ? entries
+                : Math.max(1, Runtime.getRuntime().maxMemory() / ((long) concurrentJobs * threads * ENTRY_BYTES));
+        CFG cfg = buildCFG();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrentJobs);
+        // only a stream opened here is closed, so that stdout stays usable
+        PrintStream outFile = null;
+        try {
+            if (out != null) {
+                outFile = new PrintStream(new FileOutputStream(out), true);
+            }
+            PrintStream writer = outFile == null ? stdout : outFile;
+            List<Future<String>> results = new ArrayList<>();
+            for (Path file : files) {
+                Duration budget = timeout;
+                results.add(executor.submit(() -> runJob(cfg, file, threads, budget, maxEntries)));
+            }
+            for (Future<String> result : results) {
+                writer.println(result.get());
+            }
+        } catch (IOException | ExecutionException e) {
+            throw new RuntimeException("Batch synthesis error", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+            if (outFile != null) {
+                outFile.close();
+            }
+        }
+    }
+
+    /**
+     * @return the value of the option at args[i - 1]
+     * @throws IllegalArgumentException if it has none
+     */
+    private static String optionValue(List<String> args, int i, String option) {
+        if (i >= args.size()) {
+            throw new IllegalArgumentException("Missing value of " + option);
+        }
+        return args.get(i);
+    }
 
+    /**
+     * @return the files of a directory sorted by name, or the path itself if it is a file
+     */
+    private static List<Path> specFiles(Path path) {
+        if (!Files.isDirectory(path)) {
+            return List.of(path);
+        }
+        try (Stream<Path> children = Files.list(path)) {
+            return children.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot list " + path, e);
+        }
+    }
+
+    /**
+     * @param threads    most threads of the synthesis
+     * @param maxEntries most entries of every synthesizer
+     * @return the result line of one spec file
+     */
+    private static String runJob(CFG cfg, Path file, int threads, Duration timeout, long maxEntries) {
+        long start = System.nanoTime();
+        String status;
+        Object program;
+        try {
+            List<Example> examples = Parser.parseAllExamples(FileUtils.readLinesFromFile(file.toString()));
+            SynthesisResult result = newSynthesizer(threads).synthesize(cfg, examples,
+                    new Budget(timeout, maxEntries, new CancellationToken()));
+            status = result.getStatus().toString();
+            program = result.getProgram();
+        } catch (RuntimeException | AssertionError e) {
+            status = "ERROR";
+            program = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        return file + "\t" + status + "\t" + millis + "\t" + escape(String.valueOf(program));
+    }
+
+    /**
+     * @return the text with its backslashes, tabs and line breaks escaped, to fit in one field of a result line
+     */
+    static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /**
+     * @return a new synthesizer for one problem: conditional programs are found by DivAndCon, straight-line ones
+     * often sooner by the top-down search
+     */
+    private static ISynthesizer newSynthesizer() {
+        return newSynthesizer(RACERS);
+    }
+
+    /**
+     * @param threads most threads of the synthesis: DivAndCon alone below RACERS
+     */
+    private static ISynthesizer newSynthesizer(int threads) {
+        if (threads < RACERS) {
+            return new DivAndConSynthesizer();
+        }
+        return new PortfolioSynthesizer(new DivAndConSynthesizer(), new TopDownEnumSynthesizer());
     }
 
     /**
@@ -1,5 +1,8 @@
 package synth.cfg;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -12,10 +15,66 @@ public class CFG {
      * start symbol of the grammar
      */
     private final NonTerminal startSymbol;
+    /**
+     * nonTerminals[id] is the nonterminal with that id; the start symbol has id 0, then come the nonterminals in the
+     * order they are reached from it
+     */
+    private final NonTerminal[] nonTerminals;
+    /**
+     * terminals[id] is the terminal with that id, in the order they are reached from the start symbol
+     */
+    private final Terminal[] terminals;
+    /**
+     * productions[id] are the productions of nonTerminals[id]
+     */
+    private final List<List<Production>> productions;
+    /**
+     * ids of the symbols of this grammar, by name, so that symbols shared by several grammars get an id in each
+     */
+    private final Map<NonTerminal, Integer> nonTerminalIds;
+    private final Map<Terminal, Integer> terminalIds;
 
+    /**
+     * Assign a dense id to every symbol of the grammar, see {@link #getId(Symbol)}.
+     */
     public CFG(NonTerminal startSymbol, Map<NonTerminal, List<Production>> symbolToProductions) {
         this.startSymbol = startSymbol;
         this.symbolToProductions = symbolToProductions;
+        Map<NonTerminal, Integer> nonTerminalIds = new LinkedHashMap<>();
+        Map<Terminal, Integer> terminalIds = new LinkedHashMap<>();
+        List<NonTerminal> order = new ArrayList<>();
+        order.add(startSymbol);
+        nonTerminalIds.put(startSymbol, 0);
+        for (int i = 0; ; ++i) {
+            if (i == order.size()) {
+                // the nonterminals unreachable from the start symbol come last
+                NonTerminal unreached = firstUnreached(nonTerminalIds);
+                if (unreached == null) {
+                    break;
+                }
+                nonTerminalIds.put(unreached, order.size());
+                order.add(unreached);
+            }
+            for (Production prod : getProductionsByName(order.get(i))) {
+                terminalIds.putIfAbsent(prod.getOperator(), terminalIds.size());
+                for (Symbol arg : prod.getArgumentSymbols()) {
+                    if (arg.isTerminal()) {
+                        terminalIds.putIfAbsent((Terminal) arg, terminalIds.size());
+                    } else if (!nonTerminalIds.containsKey(arg)) {
+                        nonTerminalIds.put((NonTerminal) arg, order.size());
+                        order.add((NonTerminal) arg);
+                    }
+                }
+            }
+        }
+        this.nonTerminals = order.toArray(new NonTerminal[0]);
+        this.terminals = terminalIds.keySet().toArray(new Terminal[0]);
+        this.productions = new ArrayList<>();
+        for (NonTerminal symbol : this.nonTerminals) {
+            this.productions.add(getProductionsByName(symbol));
+        }
+        this.nonTerminalIds = nonTerminalIds;
+        this.terminalIds = terminalIds;
     }
 
     public NonTerminal getStartSymbol() {
@@ -26,6 +85,52 @@ public class CFG {
         return symbolToProductions.get(symbol);
     }
 
+    /**
+     * @return the dense id of the symbol among the nonterminals or the terminals of this grammar: the start symbol
+     * has id 0, then come the symbols in the order they are reached from it. -1 if the symbol is not in the grammar.
+     */
+    public int getId(Symbol symbol) {
+        Integer id = symbol.isTerminal() ? this.terminalIds.get(symbol) : this.nonTerminalIds.get(symbol);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the productions of the nonterminal with that id
+     */
+    public List<Production> getProductions(int id) {
+        return this.productions.get(id);
+    }
+
+    public int getNonTerminalCount() {
+        return this.nonTerminals.length;
+    }
+
+    public NonTerminal getNonTerminal(int id) {
+        return this.nonTerminals[id];
+    }
+
+    public int getTerminalCount() {
+        return this.terminals.length;
+    }
+
+    public Terminal getTerminal(int id) {
+        return this.terminals[id];
+    }
+
+    private List<Production> getProductionsByName(NonTerminal symbol) {
+        List<Production> prods = symbolToProductions.get(symbol);
+        return prods == null ? Collections.emptyList() : prods;
+    }
+
+    private NonTerminal firstUnreached(Map<NonTerminal, Integer> nonTerminalIds) {
+        for (NonTerminal symbol : symbolToProductions.keySet()) {
+            if (!nonTerminalIds.containsKey(symbol)) {
+                return symbol;
+            }
+        }
+        return null;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
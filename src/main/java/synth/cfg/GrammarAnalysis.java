@@ -0,0 +1,209 @@
+package synth.cfg;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Static facts about a grammar, computed once by fixpoint iteration over its productions: which nonterminals are
+ * reachable and productive, the least size, depth and cost of their programs, and how many programs each derives.
+ */
+public final class GrammarAnalysis {
+    /**
+     * cost of a nonterminal that derives no complete program
+     */
+    public static final int UNPRODUCTIVE = Integer.MAX_VALUE;
+
+    private final CFG cfg;
+    /**
+     * minSizes[id] is the size of the smallest complete program derived from the nonterminal with that id
+     */
+    private final int[] minSizes;
+    /**
+     * minDepths[id] is the depth of the shallowest complete program derived from the nonterminal with that id
+     */
+    private final int[] minDepths;
+    private final boolean[] reachable;
+
+    public GrammarAnalysis(CFG cfg) {
+        this.cfg = cfg;
+        this.minSizes = minCosts(production -> 1);
+        this.minDepths = new int[cfg.getNonTerminalCount()];
+        Arrays.fill(this.minDepths, UNPRODUCTIVE);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int id = 0; id < this.minDepths.length; ++id) {
+                for (Production prod : cfg.getProductions(id)) {
+                    int depth = minDepth(prod);
+                    if (depth < this.minDepths[id]) {
+                        this.minDepths[id] = depth;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        this.reachable = new boolean[cfg.getNonTerminalCount()];
+        this.reachable[cfg.getId(cfg.getStartSymbol())] = true;
+        // ids are assigned breadth-first from the start symbol, so one pass in id order reaches all
+        for (int id = 0; id < this.reachable.length; ++id) {
+            if (!this.reachable[id]) {
+                continue;
+            }
+            for (Production prod : cfg.getProductions(id)) {
+                for (Symbol arg : prod.getArgumentSymbols()) {
+                    if (arg.isNonTerminal()) {
+                        this.reachable[this.cfg.getId(arg)] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether symbol derives at least one complete program
+     */
+    public boolean isProductive(NonTerminal symbol) {
+        return this.minSizes[this.cfg.getId(symbol)] != UNPRODUCTIVE;
+    }
+
+    /**
+     * @return whether symbol occurs in some derivation from the start symbol
+     */
+    public boolean isReachable(NonTerminal symbol) {
+        return this.reachable[this.cfg.getId(symbol)];
+    }
+
+    /**
+     * @return the size of the smallest complete program derived from symbol, or UNPRODUCTIVE
+     */
+    public int minSize(NonTerminal symbol) {
+        return this.minSizes[this.cfg.getId(symbol)];
+    }
+
+    /**
+     * @return the size of the smallest complete program starting with prod, or UNPRODUCTIVE
+     */
+    public int minSize(Production prod) {
+        return (int) productionCost(prod, production -> 1, this.minSizes);
+    }
+
+    /**
+     * @return the depth of the shallowest complete program derived from symbol, a leaf having depth 1, or
+     * UNPRODUCTIVE
+     */
+    public int minDepth(NonTerminal symbol) {
+        return this.minDepths[this.cfg.getId(symbol)];
+    }
+
+    /**
+     * @return the depth of the shallowest complete program starting with prod, or UNPRODUCTIVE
+     */
+    public int minDepth(Production prod) {
+        int depth = 0;
+        for (Symbol arg : prod.getArgumentSymbols()) {
+            int argDepth = arg.isTerminal() ? 1 : this.minDepths[this.cfg.getId(arg)];
+            if (argDepth == UNPRODUCTIVE) {
+                return UNPRODUCTIVE;
+            }
+            depth = Math.max(depth, argDepth);
+        }
+        return depth + 1;
+    }
+
+    /**
+     * Count the complete programs derived from symbol by size, saturating at Long.MAX_VALUE.
+     *
+     * @return counts[n] is the number of programs of size n, for n up to maxSize
+     */
+    public long[] countPrograms(NonTerminal symbol, int maxSize) {
+        long[][] counts = new long[this.cfg.getNonTerminalCount()][maxSize + 1];
+        // every argument has size at least 1, so the programs of size n only use smaller ones
+        for (int n = 1; n <= maxSize; ++n) {
+            for (int id = 0; id < counts.length; ++id) {
+                for (Production prod : this.cfg.getProductions(id)) {
+                    counts[id][n] = saturatedAdd(counts[id][n], countArguments(prod.getArgumentSymbols(), 0, n - 1,
+                            counts));
+                }
+            }
+        }
+        return counts[this.cfg.getId(symbol)];
+    }
+
+    /**
+     * @return the number of ways the arguments from index k on derive programs of total size n
+     */
+    private long countArguments(List<Symbol> args, int k, int n, long[][] counts) {
+        if (k == args.size()) {
+            return n == 0 ? 1 : 0;
+        }
+        Symbol arg = args.get(k);
+        if (arg.isTerminal()) {
+            return n >= 1 ? countArguments(args, k + 1, n - 1, counts) : 0;
+        }
+        long total = 0;
+        for (int size = 1; size <= n - (args.size() - k - 1); ++size) {
+            long here = counts[this.cfg.getId(arg)][size];
+            if (here != 0) {
+                total = saturatedAdd(total, saturatedMultiply(here, countArguments(args, k + 1, n - size, counts)));
+            }
+        }
+        return total;
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static long saturatedMultiply(long a, long b) {
+        if (a != 0 && b > Long.MAX_VALUE / a) {
+            return Long.MAX_VALUE;
+        }
+        return a * b;
+    }
+
+    /**
+     * Least cost of the complete programs derived from every nonterminal, when the cost of a program is the sum of
+     * the costs of its productions, and a terminal argument of a production counts as a leaf of cost 1.
+     *
+     * @param cost cost of one use of a production, at least 1
+     * @return the least cost by nonterminal id, UNPRODUCTIVE for nonterminals deriving no complete program
+     */
+    public int[] minCosts(ToIntFunction<Production> cost) {
+        int[] minCosts = new int[this.cfg.getNonTerminalCount()];
+        Arrays.fill(minCosts, UNPRODUCTIVE);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int id = 0; id < minCosts.length; ++id) {
+                for (Production prod : this.cfg.getProductions(id)) {
+                    long total = productionCost(prod, cost, minCosts);
+                    if (total < minCosts[id]) {
+                        minCosts[id] = (int) total;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return minCosts;
+    }
+
+    /**
+     * @return the cost of prod plus the least costs of its arguments, or UNPRODUCTIVE if an argument is unproductive
+     */
+    public long productionCost(Production prod, ToIntFunction<Production> cost, int[] minCosts) {
+        long total = cost.applyAsInt(prod);
+        List<Symbol> args = prod.getArgumentSymbols();
+        for (Symbol arg : args) {
+            if (arg.isTerminal()) {
+                total += 1;
+            } else if (minCosts[this.cfg.getId(arg)] == UNPRODUCTIVE) {
+                return UNPRODUCTIVE;
+            } else {
+                total += minCosts[this.cfg.getId(arg)];
+            }
+        }
+        return Math.min(total, UNPRODUCTIVE);
+    }
+}
@@ -0,0 +1,127 @@
+package synth.cfg;
+
+/**
+ * Integer opcodes of the operators and leaves in the grammar, so that evaluators can switch on an int
+ * instead of comparing symbol names.
+ */
+public final class Opcode {
+    public static final int UNKNOWN = -1;
+    public static final int ITE = 0;
+    public static final int ADD = 1;
+    public static final int MULTIPLY = 2;
+    public static final int VAR = 3;
+    public static final int CONST = 4;
+    public static final int LT = 5;
+    public static final int EQ = 6;
+    public static final int AND = 7;
+    public static final int OR = 8;
+    public static final int NOT = 9;
+    public static final int SUBTRACT = 10;
+    public static final int MIN = 11;
+    public static final int MAX = 12;
+
+    /**
+     * Variable names in slot order, i.e. the value of variable VARIABLES[i] is stored at index i of an environment
+     */
+    public static final String[] VARIABLES = {"x", "y", "z"};
+
+    private Opcode() {
+    }
+
+    /**
+     * Resolve the opcode of a symbol name.
+     *
+     * @param name name of a terminal symbol
+     * @return the opcode, or UNKNOWN if the name is not an operator, a variable or an integer constant
+     */
+    public static int of(String name) {
+        switch (name) {
+            case "Ite":
+                return ITE;
+            case "Add":
+                return ADD;
+            case "Multiply":
+                return MULTIPLY;
+            case "Lt":
+                return LT;
+            case "Eq":
+                return EQ;
+            case "And":
+                return AND;
+            case "Or":
+                return OR;
+            case "Not":
+                return NOT;
+            case "Subtract":
+                return SUBTRACT;
+            case "Min":
+                return MIN;
+            case "Max":
+                return MAX;
+            default:
+                if (slotOf(name) >= 0) {
+                    return VAR;
+                }
+                if (isConstant(name)) {
+                    return CONST;
+                }
+                return UNKNOWN;
+        }
+    }
+
+    /**
+     * @return whether the operator produces a boolean, i.e. belongs to a predicate nonterminal
+     */
+    public static boolean isPredicate(int opcode) {
+        switch (opcode) {
+            case LT:
+            case EQ:
+            case AND:
+            case OR:
+            case NOT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return whether swapping the two arguments of the operator never changes its value
+     */
+    public static boolean isCommutative(int opcode) {
+        switch (opcode) {
+            case ADD:
+            case MULTIPLY:
+            case MIN:
+            case MAX:
+            case EQ:
+            case AND:
+            case OR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param name variable name
+     * @return the slot index of the variable, or -1 if it is not a variable
+     */
+    public static int slotOf(String name) {
+        for (int i = 0; i < VARIABLES.length; ++i) {
+            if (VARIABLES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isConstant(String name) {
+        try {
+            Integer.parseInt(name);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -3,8 +3,21 @@ package synth.cfg;
 import java.util.Objects;
 
 public class Terminal extends Symbol {
+    /**
+     * opcode of the operator, variable or constant, resolved once from the name
+     */
+    private final int opcode;
+
     public Terminal(String name) {
         super(name);
+        this.opcode = Opcode.of(name);
+    }
+
+    /**
+     * @return the opcode of the terminal, see {@link Opcode}, or Opcode.UNKNOWN
+     */
+    public int getOpcode() {
+        return opcode;
     }
 
     @Override
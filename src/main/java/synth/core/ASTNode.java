@@ -4,19 +4,45 @@ import synth.cfg.Symbol;
 
 import java.util.List;
 
+/**
+ * Immutable AST node. Size, depth, structural hash and number of holes are computed once at construction, so
+ * comparing the sizes of two programs, using a node as a hash key or locating the holes of a partial program does not
+ * walk the tree. Nodes built by a {@link NodeFactory} are shared between the trees that contain them.
+ */
 public class ASTNode {
     private final Symbol symbol;
     private final List<ASTNode> children;
+    private final int size;
+    private final int depth;
+    private final int hash;
+    private final int holes;
 
     public ASTNode(Symbol symbol, List<ASTNode> children) {
         this.symbol = symbol;
-        this.children = children;
+        this.children = List.copyOf(children);
+        int size = 1;
+        int depth = 0;
+        int hash = symbol.hashCode();
+        int holes = this.children.isEmpty() && symbol.isNonTerminal() ? 1 : 0;
+        for (ASTNode child : this.children) {
+            size += child.size;
+            depth = Math.max(depth, child.depth);
+            hash = 31 * hash + child.hash;
+            holes += child.holes;
+        }
+        this.size = size;
+        this.depth = depth + 1;
+        this.hash = hash;
+        this.holes = holes;
     }
 
     public Symbol getSymbol() {
         return symbol;
     }
 
+    /**
+     * @return the children, which cannot be modified
+     */
     public List<ASTNode> getChildren() {
         return children;
     }
@@ -25,6 +51,13 @@ public class ASTNode {
         return children.get(index);
     }
 
+    /**
+     * @return a node like this one with other children
+     */
+    public ASTNode withChildren(List<ASTNode> children) {
+        return new ASTNode(this.symbol, children);
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -43,12 +76,38 @@ public class ASTNode {
     }
 
     public int size() {
-        if (children.isEmpty()) return 1;
-        int size = 1;
-        for (ASTNode child : children) {
-            size += child.size();
-        }
         return size;
-     }
+    }
+
+    /**
+     * @return number of nodes on the longest path from this node to a leaf
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * @return number of nonterminal leaves, i.e. holes left to expand in a partial program
+     */
+    public int holes() {
+        return holes;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
 
+    /**
+     * Structural equality. Shared subtrees compare by reference, so two trees of the same {@link NodeFactory} are
+     * compared in constant time.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ASTNode)) return false;
+        ASTNode other = (ASTNode) o;
+        return hash == other.hash && size == other.size && symbol.equals(other.symbol)
+                && children.equals(other.children);
+    }
 }
@@ -0,0 +1,354 @@
+package synth.core;
+
+import synth.cfg.NonTerminal;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Observational-equivalence bank of one nonterminal: the smallest program found so far for every distinct value
+ * vector over the examples, in the order the vectors were first found. Integer nonterminals store output vectors
+ * (int[]), predicate nonterminals store bitsets of the examples they hold on (long[], see {@link Bits}).
+ * <p>
+ * Value vectors and programs are kept off-heap in {@link VectorArena}s. A program is recorded as the operator that
+ * built it and the indices of its children in the banks of the argument symbols, and its AST is only rebuilt when it
+ * is asked for, e.g. for the winning program. The rebuilt AST uses the current program of every child class, which is
+ * never larger than the one it was built from.
+ *
+ * @param <V> type of the value vectors
+ */
+final class Bank<V> {
+    /**
+     * most arguments of an operator
+     */
+    static final int MAX_ARITY = 3;
+    /**
+     * producer of a program stored as an AST in explicitNodes
+     */
+    private static final int EXPLICIT = -1;
+    /**
+     * producer of a program of the origin bank
+     */
+    private static final int PROJECTED = -2;
+    private static final int PRODUCER = 0;
+    private static final int SIZE = 1;
+    private static final int CHILDREN = 2;
+
+    private final NonTerminal symbol;
+    private final Class<V> type;
+    private final ToIntFunction<V> hash;
+    private final BiPredicate<V, V> equal;
+    /**
+     * banks of all nonterminals by id, to look up the children of the programs
+     */
+    private final Bank<?>[] banks;
+    /**
+     * bank of the parent problem this bank is a projection of, or null
+     */
+    private final Bank<V> origin;
+    private final VectorArena<V> values;
+    /**
+     * one record per class: its producer (an index in operators, EXPLICIT or PROJECTED), the size of its program and
+     * the indices of its children (the index in explicitNodes or in the origin bank for the other producers)
+     */
+    private final VectorArena.Ints programs;
+    private final List<Operator> operators = new ArrayList<>();
+    private final List<ASTNode> explicitNodes = new ArrayList<>();
+    /**
+     * value vector -> index of its class in values / programs
+     */
+    private final VectorTable<V> classes;
+    /**
+     * levelStarts.get(n) is the index of the first entry of AST size n, when the bank is grown by size
+     */
+    private final List<Integer> levelStarts = new ArrayList<>();
+
+    /**
+     * @param hash         hash function of the value vectors
+     * @param equal        equality of the value vectors
+     * @param expectedSize number of classes the storage is first sized for
+     */
+    private Bank(NonTerminal symbol, Class<V> type, ToIntFunction<V> hash, BiPredicate<V, V> equal,
+                 Bank<?>[] banks, Bank<V> origin, VectorArena<V> values, int expectedSize) {
+        this.symbol = symbol;
+        this.type = type;
+        this.hash = hash;
+        this.equal = equal;
+        this.banks = banks;
+        this.origin = origin;
+        this.values = values;
+        this.programs = VectorArena.ofInts(CHILDREN + MAX_ARITY, expectedSize);
+        this.classes = new VectorTable<>(new VectorTable.Keys<>() {
+            @Override
+            public int hash(V key) {
+                return hash.applyAsInt(key);
+            }
+
+            @Override
+            public boolean matches(V key, int id) {
+                return values.matches(id, key);
+            }
+        }, expectedSize);
+    }
+
+    /**
+     * @param banks banks of all nonterminals by id, this one included once created
+     * @param size  number of examples
+     */
+    static Bank<int[]> ofExpressions(NonTerminal symbol, Bank<?>[] banks, int size) {
+        return new Bank<>(symbol, int[].class, VectorTable::hash, Arrays::equals, banks, null,
+                VectorArena.ofInts(size, VectorArena.DEFAULT_SIZE), VectorArena.DEFAULT_SIZE);
+    }
+
+    static Bank<long[]> ofPredicates(NonTerminal symbol, Bank<?>[] banks, int size) {
+        return new Bank<>(symbol, long[].class, VectorTable::hash, Arrays::equals, banks, null,
+                VectorArena.ofLongs(Bits.words(size), VectorArena.DEFAULT_SIZE), VectorArena.DEFAULT_SIZE);
+    }
+
+    /**
+     * @param banks banks of all nonterminals of the sub-problem by id
+     * @param size  number of examples of the sub-problem
+     * @return an empty bank of the same nonterminal for a sub-problem, to be filled with {@link #addProjection}, and
+     * sized for as many classes as this one
+     */
+    Bank<V> newProjection(Bank<?>[] banks, int size) {
+        VectorArena<?> arena = isPredicate() ? VectorArena.ofLongs(Bits.words(size), size())
+                : VectorArena.ofInts(size, size());
+        @SuppressWarnings("unchecked")
+        VectorArena<V> values = (VectorArena<V>) arena;
+        return new Bank<>(this.symbol, this.type, this.hash, this.equal, banks, this, values, size());
+    }
+
+    public NonTerminal getSymbol() {
+        return symbol;
+    }
+
+    public boolean isPredicate() {
+        return this.type == long[].class;
+    }
+
+    public int size() {
+        return this.values.size();
+    }
+
+    /**
+     * @return the program of the class at index, rebuilt from the programs of its children
+     */
+    public ASTNode getNode(int index) {
+        int producer = this.programs.get(index, PRODUCER);
+        if (producer == EXPLICIT) {
+            return this.explicitNodes.get(this.programs.get(index, CHILDREN));
+        }
+        if (producer == PROJECTED) {
+            return this.origin.getNode(this.programs.get(index, CHILDREN));
+        }
+        Operator op = this.operators.get(producer);
+        ASTNode[] children = new ASTNode[op.getArity()];
+        for (int k = 0; k < children.length; ++k) {
+            children[k] = this.banks[op.getArgId(k)].getNode(this.programs.get(index, CHILDREN + k));
+        }
+        return op.build(children);
+    }
+
+    /**
+     * @return the AST size of the program of the class at index, without rebuilding it
+     */
+    public int nodeSize(int index) {
+        return this.programs.get(index, SIZE);
+    }
+
+    /**
+     * @return a copy of the value vector of the class at index
+     */
+    public V getValues(int index) {
+        return this.values.get(index);
+    }
+
+    /**
+     * @return a read-only view of the programs of all classes, rebuilt on access
+     */
+    public List<ASTNode> getNodes() {
+        return new AbstractList<>() {
+            @Override
+            public ASTNode get(int index) {
+                return getNode(index);
+            }
+
+            @Override
+            public int size() {
+                return Bank.this.size();
+            }
+        };
+    }
+
+    /**
+     * @return a read-only view of the value vectors of all classes, copied on access
+     */
+    public List<V> getValueList() {
+        return this.values.asList();
+    }
+
+    /**
+     * @return the index of the class of the value vector, or -1 if there is none
+     */
+    public int indexOf(V values) {
+        return this.classes.get(values);
+    }
+
+    /**
+     * Add a program given as an AST to the class of its value vector, replacing the program of the class if it is
+     * smaller.
+     *
+     * @param values value vector of node
+     * @return the index of the new class, or -1 if the class already existed
+     */
+    public int add(ASTNode node, V values) {
+        int index = this.classes.putIfAbsent(values, size());
+        if (index >= 0) {
+            if (node.size() < nodeSize(index)) {
+                setExplicit(index, node);
+            }
+            return -1;
+        }
+        index = this.values.add(values);
+        this.programs.add(new int[CHILDREN + MAX_ARITY]);
+        setExplicit(index, node);
+        return index;
+    }
+
+    /**
+     * Add the program op(children) to the class of its value vector, replacing the program of the class if it is
+     * smaller.
+     *
+     * @param children indices of the children in the banks of the argument symbols of op
+     * @return the index of the new class, or -1 if the class already existed
+     */
+    public int add(Operator op, int[] children, V values) {
+        int index = this.classes.putIfAbsent(values, size());
+        if (index >= 0) {
+            if (nodeSize(op, children) < nodeSize(index)) {
+                replace(index, op, children);
+            }
+            return -1;
+        }
+        index = this.values.add(values);
+        this.programs.add(new int[CHILDREN + MAX_ARITY]);
+        replace(index, op, children);
+        return index;
+    }
+
+    /**
+     * Add the program of an entry of the origin bank as a new class.
+     *
+     * @param originIndex index of the entry in the origin bank
+     * @param values      value vector of the entry over the examples of this bank
+     * @return the index of the new class, or -1 if the class already existed
+     */
+    public int addProjection(int originIndex, V values) {
+        int index = this.classes.putIfAbsent(values, size());
+        if (index >= 0) {
+            return -1;
+        }
+        index = this.values.add(values);
+        this.programs.add(new int[]{PROJECTED, this.origin.nodeSize(originIndex), originIndex, 0, 0});
+        return index;
+    }
+
+    /**
+     * @return the AST size of op(children)
+     */
+    public int nodeSize(Operator op, int[] children) {
+        int size = 1;
+        for (int k = 0; k < op.getArity(); ++k) {
+            size += this.banks[op.getArgId(k)].nodeSize(children[k]);
+        }
+        return size;
+    }
+
+    /**
+     * @return the AST of op(children)
+     */
+    public ASTNode build(Operator op, int[] children) {
+        ASTNode[] nodes = new ASTNode[op.getArity()];
+        for (int k = 0; k < nodes.length; ++k) {
+            nodes[k] = this.banks[op.getArgId(k)].getNode(children[k]);
+        }
+        return op.build(nodes);
+    }
+
+    /**
+     * @param values value vector computed by an {@link Operator}, whose type is only known at run time
+     * @return the same vector with the value type of the bank
+     */
+    public V cast(Object values) {
+        return this.type.cast(values);
+    }
+
+    /**
+     * Replace the program of a class by an equivalent one, op(children).
+     */
+    public void replace(int index, Operator op, int[] children) {
+        if (op.getArity() > MAX_ARITY) {
+            throw new RuntimeException("Too many arguments in production " + op.getProduction());
+        }
+        int producer = this.operators.indexOf(op);
+        if (producer < 0) {
+            producer = this.operators.size();
+            this.operators.add(op);
+        }
+        this.programs.set(index, PRODUCER, producer);
+        this.programs.set(index, SIZE, nodeSize(op, children));
+        for (int k = 0; k < op.getArity(); ++k) {
+            this.programs.set(index, CHILDREN + k, children[k]);
+        }
+    }
+
+    /**
+     * Record node as the program of a class, in the slot of explicitNodes of its previous program if it had one.
+     */
+    private void setExplicit(int index, ASTNode node) {
+        if (this.programs.get(index, PRODUCER) == EXPLICIT) {
+            this.explicitNodes.set(this.programs.get(index, CHILDREN), node);
+        } else {
+            this.programs.set(index, CHILDREN, this.explicitNodes.size());
+            this.explicitNodes.add(node);
+        }
+        this.programs.set(index, PRODUCER, EXPLICIT);
+        this.programs.set(index, SIZE, node.size());
+    }
+
+    /**
+     * Start the level of the programs of AST size n: the entries added from now on have size n. Levels up to n
+     * that were not started are left empty.
+     */
+    public void startLevel(int n) {
+        while (this.levelStarts.size() <= n) {
+            this.levelStarts.add(size());
+        }
+    }
+
+    /**
+     * @return number of started levels, 0 if the bank is not grown by size
+     */
+    public int levelCount() {
+        return this.levelStarts.size();
+    }
+
+    /**
+     * @return the index of the first entry of AST size n; the entries of size n end at levelStart(n + 1)
+     */
+    public int levelStart(int n) {
+        return n < this.levelStarts.size() ? this.levelStarts.get(n) : size();
+    }
+
+    /**
+     * @return an empty table for the candidates of one parallel growth step of this bank
+     */
+    CandidateTable<V> newCandidateTable() {
+        return new CandidateTable<>(this.hash, this.equal);
+    }
+}
@@ -0,0 +1,178 @@
+package synth.core;
+
+import synth.cfg.Opcode;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates a compiled program over all examples of an {@link ExampleTable} at once. Every AST node produces a whole
+ * output vector, computed by the element-wise kernels below. The kernels are tight counted loops over primitive
+ * arrays, so the opcode is dispatched once per node instead of once per example. Predicates produce bitsets (see
+ * {@link Bits}), so that And, Or and Not handle 64 examples per word operation.
+ */
+public final class BatchEvaluator {
+
+    private BatchEvaluator() {
+    }
+
+    /**
+     * @param expr  compiled expression
+     * @param table examples
+     * @return the value of the expression on every example; may be a column of the table, which must not be modified
+     */
+    public static int[] evalExpr(CompiledNode expr, ExampleTable table) {
+        switch (expr.getOpcode()) {
+            case Opcode.ITE: {
+                long[] cond = evalPred(expr.getChild(0), table);
+                int[] dst = new int[table.size()];
+                ite(cond, evalExpr(expr.getChild(1), table), evalExpr(expr.getChild(2), table), dst);
+                return dst;
+            }
+            case Opcode.ADD: {
+                int[] dst = new int[table.size()];
+                add(evalExpr(expr.getChild(0), table), evalExpr(expr.getChild(1), table), dst);
+                return dst;
+            }
+            case Opcode.MULTIPLY: {
+                int[] dst = new int[table.size()];
+                multiply(evalExpr(expr.getChild(0), table), evalExpr(expr.getChild(1), table), dst);
+                return dst;
+            }
+            case Opcode.SUBTRACT: {
+                int[] dst = new int[table.size()];
+                subtract(evalExpr(expr.getChild(0), table), evalExpr(expr.getChild(1), table), dst);
+                return dst;
+            }
+            case Opcode.MIN: {
+                int[] dst = new int[table.size()];
+                min(evalExpr(expr.getChild(0), table), evalExpr(expr.getChild(1), table), dst);
+                return dst;
+            }
+            case Opcode.MAX: {
+                int[] dst = new int[table.size()];
+                max(evalExpr(expr.getChild(0), table), evalExpr(expr.getChild(1), table), dst);
+                return dst;
+            }
+            case Opcode.VAR:
+                return table.getColumn(expr.getOperand());
+            case Opcode.CONST: {
+                int[] dst = new int[table.size()];
+                Arrays.fill(dst, expr.getOperand());
+                return dst;
+            }
+            default:
+                throw new RuntimeException("Cannot evaluate expression with opcode " + expr.getOpcode());
+        }
+    }
+
+    /**
+     * @param pred  compiled predicate
+     * @param table examples
+     * @return the bitset of examples on which the predicate holds
+     */
+    public static long[] evalPred(CompiledNode pred, ExampleTable table) {
+        long[] dst = new long[Bits.words(table.size())];
+        switch (pred.getOpcode()) {
+            case Opcode.LT:
+                lt(evalExpr(pred.getChild(0), table), evalExpr(pred.getChild(1), table), dst);
+                return dst;
+            case Opcode.EQ:
+                eq(evalExpr(pred.getChild(0), table), evalExpr(pred.getChild(1), table), dst);
+                return dst;
+            case Opcode.AND:
+                and(evalPred(pred.getChild(0), table), evalPred(pred.getChild(1), table), dst);
+                return dst;
+            case Opcode.OR:
+                or(evalPred(pred.getChild(0), table), evalPred(pred.getChild(1), table), dst);
+                return dst;
+            case Opcode.NOT:
+                not(evalPred(pred.getChild(0), table), table.size(), dst);
+                return dst;
+            default:
+                throw new RuntimeException("Cannot evaluate predicate with opcode " + pred.getOpcode());
+        }
+    }
+
+    public static void add(int[] left, int[] right, int[] dst) {
+        for (int i = 0; i < dst.length; ++i) {
+            dst[i] = left[i] + right[i];
+        }
+    }
+
+    public static void multiply(int[] left, int[] right, int[] dst) {
+        for (int i = 0; i < dst.length; ++i) {
+            dst[i] = left[i] * right[i];
+        }
+    }
+
+    public static void subtract(int[] left, int[] right, int[] dst) {
+        for (int i = 0; i < dst.length; ++i) {
+            dst[i] = left[i] - right[i];
+        }
+    }
+
+    public static void min(int[] left, int[] right, int[] dst) {
+        for (int i = 0; i < dst.length; ++i) {
+            dst[i] = Math.min(left[i], right[i]);
+        }
+    }
+
+    public static void max(int[] left, int[] right, int[] dst) {
+        for (int i = 0; i < dst.length; ++i) {
+            dst[i] = Math.max(left[i], right[i]);
+        }
+    }
+
+    public static void ite(long[] cond, int[] then, int[] otherwise, int[] dst) {
+        for (int i = 0; i < dst.length; ++i) {
+            dst[i] = Bits.get(cond, i) ? then[i] : otherwise[i];
+        }
+    }
+
+    public static void lt(int[] left, int[] right, long[] dst) {
+        int size = left.length;
+        for (int w = 0; w < dst.length; ++w) {
+            int base = w << 6;
+            int end = Math.min(64, size - base);
+            long word = 0;
+            for (int b = 0; b < end; ++b) {
+                word |= (left[base + b] < right[base + b] ? 1L : 0L) << b;
+            }
+            dst[w] = word;
+        }
+    }
+
+    public static void eq(int[] left, int[] right, long[] dst) {
+        int size = left.length;
+        for (int w = 0; w < dst.length; ++w) {
+            int base = w << 6;
+            int end = Math.min(64, size - base);
+            long word = 0;
+            for (int b = 0; b < end; ++b) {
+                word |= (left[base + b] == right[base + b] ? 1L : 0L) << b;
+            }
+            dst[w] = word;
+        }
+    }
+
+    public static void and(long[] left, long[] right, long[] dst) {
+        for (int w = 0; w < dst.length; ++w) {
+            dst[w] = left[w] & right[w];
+        }
+    }
+
+    public static void or(long[] left, long[] right, long[] dst) {
+        for (int w = 0; w < dst.length; ++w) {
+            dst[w] = left[w] | right[w];
+        }
+    }
+
+    /**
+     * @param size number of examples, bits past it are left clear
+     */
+    public static void not(long[] src, int size, long[] dst) {
+        for (int w = 0; w < dst.length; ++w) {
+            dst[w] = ~src[w] & Bits.wordMask(size, w);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package synth.core;
+
+/**
+ * Helpers for bitsets stored as long arrays, where bit i (word i / 64, bit i % 64) stands for example i. Bits past
+ * the number of examples are always zero, so that equal sets have equal arrays.
+ */
+public final class Bits {
+
+    private Bits() {
+    }
+
+    /**
+     * @param size number of examples
+     * @return number of words of a bitset over size examples
+     */
+    public static int words(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    /**
+     * @param size number of examples
+     * @return the bitset containing every example
+     */
+    public static long[] full(int size) {
+        long[] bits = new long[words(size)];
+        for (int w = 0; w < bits.length; ++w) {
+            bits[w] = wordMask(size, w);
+        }
+        return bits;
+    }
+
+    public static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * @return number of examples in the bitset
+     */
+    public static int count(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * @return mask of the valid bits of word w in a bitset over size examples
+     */
+    public static long wordMask(int size, int w) {
+        int valid = size - (w << 6);
+        return valid >= 64 ? -1L : (1L << valid) - 1;
+    }
+}
@@ -0,0 +1,64 @@
+package synth.core;
+
+import java.time.Duration;
+
+/**
+ * Limits of a synthesis run: a deadline, a maximum number of entries in the banks or worklist of the synthesizer,
+ * and a cancellation token. Synthesizers check it between steps of their search and stop with the matching
+ * {@link SynthesisResult.Status}; an interrupted thread counts as cancelled.
+ * <p>
+ * A budget may be shared by several synthesizers running at the same time; the entries are counted separately.
+ */
+public final class Budget {
+    /**
+     * System.nanoTime() past which the run times out, or Long.MAX_VALUE
+     */
+    private final long deadline;
+    private final long maxEntries;
+    private final CancellationToken token;
+
+    /**
+     * @param timeout    time from now until the deadline, or null for none
+     * @param maxEntries most entries of the banks or worklist, e.g. Long.MAX_VALUE
+     */
+    public Budget(Duration timeout, long maxEntries, CancellationToken token) {
+        this.deadline = timeout == null ? Long.MAX_VALUE : System.nanoTime() + timeout.toNanos();
+        this.maxEntries = maxEntries;
+        this.token = token;
+    }
+
+    public static Budget unlimited() {
+        return new Budget(null, Long.MAX_VALUE, new CancellationToken());
+    }
+
+    public static Budget ofTimeout(Duration timeout) {
+        return new Budget(timeout, Long.MAX_VALUE, new CancellationToken());
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public CancellationToken getToken() {
+        return token;
+    }
+
+    /**
+     * Checks the thread interruption too, so call it from the thread running the synthesis.
+     *
+     * @param entries current number of entries of the synthesizer
+     * @return why the run must stop, or null if it is within budget
+     */
+    SynthesisResult.Status check(long entries) {
+        if (this.token.isCancelled() || Thread.currentThread().isInterrupted()) {
+            return SynthesisResult.Status.CANCELLED;
+        }
+        if (this.deadline != Long.MAX_VALUE && System.nanoTime() - this.deadline > 0) {
+            return SynthesisResult.Status.TIMED_OUT;
+        }
+        if (entries > this.maxEntries) {
+            return SynthesisResult.Status.OUT_OF_MEMORY;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,17 @@
+package synth.core;
+
+/**
+ * Flag shared between a caller and the synthesizers it runs, set by the caller to stop them. Synthesizers check it
+ * between steps of their search, see {@link Budget}.
+ */
+public final class CancellationToken {
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+}
@@ -0,0 +1,166 @@
+package synth.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Thread-safe table of the candidates produced by one parallel growth step, keyed by value vector. Every class keeps
+ * the candidates the sequential enumeration would add or replace it with: the ones smaller than every candidate
+ * before them in the sequential enumeration order. The result then does not depend on thread scheduling, and merging
+ * them in that order builds the bank the sequential enumeration builds. Keys are spread over independently locked
+ * stripes, each an open-addressing {@link VectorTable}.
+ * <p>
+ * The table also collects the candidates to check for a division, which the sequential enumeration checks whether or
+ * not they are added.
+ *
+ * @param <V> type of the value vectors
+ */
+final class CandidateTable<V> {
+
+    static final class Candidate<V> {
+        /**
+         * the program of the candidate is op(children), the children being indices in the banks of the argument
+         * symbols of op
+         */
+        final Operator op;
+        final int[] children;
+        final V values;
+        final int size;
+        /**
+         * position of the candidate in the sequential enumeration order
+         */
+        final long seq;
+        /**
+         * index of the equivalent entry already in the bank, or -1 if the candidate starts a new class
+         */
+        final int existing;
+        /**
+         * next candidate of the class in the table, guarded by the lock of its stripe
+         */
+        private Candidate<V> next;
+
+        Candidate(Operator op, int[] children, V values, int size, long seq, int existing) {
+            this.op = op;
+            this.children = children;
+            this.values = values;
+            this.size = size;
+            this.seq = seq;
+            this.existing = existing;
+        }
+    }
+
+    private static final int STRIPE_BITS = 6;
+
+    private final ToIntFunction<V> hash;
+    /**
+     * first candidate of every class of every stripe, followed by the next ones in sequential enumeration order and
+     * decreasing size
+     */
+    private final List<List<Candidate<V>>> candidates = new ArrayList<>();
+    private final List<VectorTable<V>> tables = new ArrayList<>();
+    private final List<Candidate<V>> checks = new ArrayList<>();
+
+    /**
+     * @param hash  hash function of the value vectors
+     * @param equal equality of the value vectors
+     */
+    CandidateTable(ToIntFunction<V> hash, BiPredicate<V, V> equal) {
+        this.hash = hash;
+        for (int s = 0; s < (1 << STRIPE_BITS); ++s) {
+            List<Candidate<V>> stripe = new ArrayList<>();
+            this.candidates.add(stripe);
+            this.tables.add(new VectorTable<>(new VectorTable.Keys<>() {
+                @Override
+                public int hash(V key) {
+                    return hash.applyAsInt(key);
+                }
+
+                @Override
+                public boolean matches(V key, int id) {
+                    return equal.test(key, stripe.get(id).values);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Record a candidate, keeping it only if it is smaller than the candidates of its class before it, and dropping
+     * the candidates after it that are no smaller.
+     */
+    void offer(Candidate<V> candidate) {
+        // the low bits of the hash pick the slot inside a stripe, so use the high bits to pick the stripe
+        int s = this.hash.applyAsInt(candidate.values) >>> (Integer.SIZE - STRIPE_BITS);
+        List<Candidate<V>> stripe = this.candidates.get(s);
+        VectorTable<V> table = this.tables.get(s);
+        synchronized (stripe) {
+            int id = table.putIfAbsent(candidate.values, stripe.size());
+            if (id < 0) {
+                stripe.add(candidate);
+                return;
+            }
+            Candidate<V> previous = null;
+            Candidate<V> next = stripe.get(id);
+            while (next != null && next.seq < candidate.seq) {
+                if (next.size <= candidate.size) {
+                    return;
+                }
+                previous = next;
+                next = next.next;
+            }
+            while (next != null && next.size >= candidate.size) {
+                next = next.next;
+            }
+            candidate.next = next;
+            if (previous == null) {
+                stripe.set(id, candidate);
+            } else {
+                previous.next = candidate;
+            }
+        }
+    }
+
+    /**
+     * Record a candidate to check for a division.
+     */
+    void offerCheck(Candidate<V> candidate) {
+        synchronized (this.checks) {
+            this.checks.add(candidate);
+        }
+    }
+
+    /**
+     * @param newClasses whether to include the candidates starting new classes
+     * @return the candidates of every class, in sequential enumeration order
+     */
+    List<Candidate<V>> drain(boolean newClasses) {
+        List<Candidate<V>> all = new ArrayList<>();
+        for (List<Candidate<V>> stripe : this.candidates) {
+            synchronized (stripe) {
+                for (Candidate<V> first : stripe) {
+                    if (newClasses || first.existing >= 0) {
+                        for (Candidate<V> candidate = first; candidate != null; candidate = candidate.next) {
+                            all.add(candidate);
+                        }
+                    }
+                }
+            }
+        }
+        all.sort(Comparator.comparingLong(c -> c.seq));
+        return all;
+    }
+
+    /**
+     * @return the candidates to check for a division, in sequential enumeration order
+     */
+    List<Candidate<V>> drainChecks() {
+        List<Candidate<V>> all;
+        synchronized (this.checks) {
+            all = new ArrayList<>(this.checks);
+        }
+        all.sort(Comparator.comparingLong(c -> c.seq));
+        return all;
+    }
+}
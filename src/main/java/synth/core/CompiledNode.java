@@ -0,0 +1,124 @@
+package synth.core;
+
+import synth.cfg.Opcode;
+import synth.cfg.Terminal;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An AST compiled into a pre-resolved evaluator tree: symbol names are resolved to opcodes, constants are parsed
+ * and variables are resolved to slot indices once, so that evaluating the same program on many examples does not
+ * touch strings or maps.
+ */
+public final class CompiledNode {
+    private final int opcode;
+    /**
+     * constant value for CONST, slot index for VAR, unused otherwise
+     */
+    private final int operand;
+    private final CompiledNode[] children;
+
+    private CompiledNode(int opcode, int operand, CompiledNode[] children) {
+        this.opcode = opcode;
+        this.operand = operand;
+        this.children = children;
+    }
+
+    /**
+     * Compile an AST into an evaluator tree.
+     *
+     * @param node root of the AST, must be complete (no non-terminal leaves)
+     * @return the compiled evaluator
+     */
+    public static CompiledNode compile(ASTNode node) {
+        String name = node.getSymbol().getName();
+        int opcode = node.getSymbol().isTerminal() ? ((Terminal) node.getSymbol()).getOpcode() : Opcode.UNKNOWN;
+        int operand = 0;
+        switch (opcode) {
+            case Opcode.VAR:
+                operand = Opcode.slotOf(name);
+                break;
+            case Opcode.CONST:
+                operand = Integer.parseInt(name);
+                break;
+            case Opcode.UNKNOWN:
+                throw new RuntimeException("Cannot compile " + node);
+            default:
+                break;
+        }
+        List<ASTNode> astChildren = node.getChildren();
+        CompiledNode[] children = new CompiledNode[astChildren.size()];
+        for (int i = 0; i < children.length; ++i) {
+            children[i] = compile(astChildren.get(i));
+        }
+        return new CompiledNode(opcode, operand, children);
+    }
+
+    /**
+     * Lay out an environment map as an array indexed by variable slot.
+     *
+     * @param environment mapping from all variable names to their values
+     * @return values of the variables in slot order
+     */
+    public static int[] bindEnvironment(Map<String, Integer> environment) {
+        int[] env = new int[Opcode.VARIABLES.length];
+        for (int i = 0; i < env.length; ++i) {
+            Integer value = environment.get(Opcode.VARIABLES[i]);
+            env[i] = value == null ? 0 : value;
+        }
+        return env;
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+
+    public int getOperand() {
+        return operand;
+    }
+
+    public CompiledNode getChild(int index) {
+        return children[index];
+    }
+
+    public int evalExpr(int[] env) {
+        switch (opcode) {
+            case Opcode.ITE:
+                return children[0].evalPred(env) ? children[1].evalExpr(env) : children[2].evalExpr(env);
+            case Opcode.ADD:
+                return children[0].evalExpr(env) + children[1].evalExpr(env);
+            case Opcode.MULTIPLY:
+                return children[0].evalExpr(env) * children[1].evalExpr(env);
+            case Opcode.SUBTRACT:
+                return children[0].evalExpr(env) - children[1].evalExpr(env);
+            case Opcode.MIN:
+                return Math.min(children[0].evalExpr(env), children[1].evalExpr(env));
+            case Opcode.MAX:
+                return Math.max(children[0].evalExpr(env), children[1].evalExpr(env));
+            case Opcode.VAR:
+                return env[operand];
+            case Opcode.CONST:
+                return operand;
+            default:
+                throw new RuntimeException("Cannot evaluate expression with opcode " + opcode);
+        }
+    }
+
+    public boolean evalPred(int[] env) {
+        switch (opcode) {
+            case Opcode.LT:
+                return children[0].evalExpr(env) < children[1].evalExpr(env);
+            case Opcode.EQ:
+                return children[0].evalExpr(env) == children[1].evalExpr(env);
+            case Opcode.AND:
+                return children[0].evalPred(env) && children[1].evalPred(env);
+            case Opcode.OR:
+                return children[0].evalPred(env) || children[1].evalPred(env);
+            case Opcode.NOT:
+                return !children[0].evalPred(env);
+            default:
+                throw new RuntimeException("Cannot evaluate predicate with opcode " + opcode);
+        }
+    }
+}
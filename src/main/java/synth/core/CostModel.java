@@ -0,0 +1,29 @@
+package synth.core;
+
+import synth.cfg.Production;
+
+import java.util.Map;
+
+/**
+ * Cost of the programs searched by {@link TopDownEnumSynthesizer}: the cost of a program is the sum of the costs of
+ * the productions it uses, and programs are searched by increasing cost.
+ */
+public interface CostModel {
+    /**
+     * every production costs 1, so the cost of a program is its size
+     */
+    CostModel SIZE = production -> 1;
+
+    /**
+     * @return cost of one use of the production, at least 1
+     */
+    int cost(Production production);
+
+    /**
+     * @param weights cost of the productions by operator name, e.g. learned from solved problems; the other
+     *                productions cost 1
+     */
+    static CostModel ofWeights(Map<String, Integer> weights) {
+        return production -> weights.getOrDefault(production.getOperator().getName(), 1);
+    }
+}
@@ -0,0 +1,134 @@
+package synth.core;
+
+import java.util.List;
+
+/**
+ * Unifies terms that each satisfy only part of the examples into one conditional program by learning a decision tree
+ * over predicates, as done by ID3 in Eusolver. Every inner node splits its examples on the predicate with the highest
+ * information gain, and a leaf is reached once a single term satisfies all of its examples.
+ */
+public class DecisionTreeUnifier {
+    /**
+     * number of examples
+     */
+    private final int size;
+    private final List<ASTNode> terms;
+    /**
+     * termSats.get(i) is the bitset of examples satisfied by terms.get(i)
+     */
+    private final List<long[]> termSats;
+    private final List<ASTNode> preds;
+    /**
+     * predBits.get(i) is the bitset of examples on which preds.get(i) holds
+     */
+    private final List<long[]> predBits;
+    private final NodeFactory nodes;
+
+    /**
+     * @param nodes factory of the conditionals of the tree
+     */
+    public DecisionTreeUnifier(int size, List<ASTNode> terms, List<long[]> termSats,
+                               List<ASTNode> preds, List<long[]> predBits, NodeFactory nodes) {
+        this.size = size;
+        this.terms = terms;
+        this.termSats = termSats;
+        this.preds = preds;
+        this.predBits = predBits;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @return a program satisfying all examples, or null if the terms do not cover every example or the predicates
+     * cannot separate examples that need different terms
+     */
+    public ASTNode unify() {
+        return learn(Bits.full(this.size));
+    }
+
+    private ASTNode learn(long[] examples) {
+        int examplesCount = Bits.count(examples);
+        for (int t = 0; t < this.terms.size(); ++t) {
+            if (covers(this.termSats.get(t), examples)) {
+                return this.terms.get(t);
+            }
+        }
+        int bestPred = -1;
+        double bestEntropy = Double.MAX_VALUE;
+        long[] thenExamples = new long[examples.length];
+        long[] elseExamples = new long[examples.length];
+        for (int p = 0; p < this.preds.size(); ++p) {
+            long[] bits = this.predBits.get(p);
+            for (int w = 0; w < examples.length; ++w) {
+                thenExamples[w] = examples[w] & bits[w];
+                elseExamples[w] = examples[w] & ~bits[w];
+            }
+            int thenCount = Bits.count(thenExamples);
+            if (thenCount == 0 || thenCount == examplesCount) {
+                continue;
+            }
+            // maximizing the information gain is minimizing the weighted entropy of the two sides
+            double entropy = thenCount * entropy(thenExamples)
+                    + (examplesCount - thenCount) * entropy(elseExamples);
+            if (entropy < bestEntropy) {
+                bestEntropy = entropy;
+                bestPred = p;
+            }
+        }
+        if (bestPred < 0) {
+            return null;
+        }
+        long[] bits = this.predBits.get(bestPred);
+        for (int w = 0; w < examples.length; ++w) {
+            thenExamples[w] = examples[w] & bits[w];
+            elseExamples[w] = examples[w] & ~bits[w];
+        }
+        ASTNode thenBranch = learn(thenExamples);
+        if (thenBranch == null) {
+            return null;
+        }
+        ASTNode elseBranch = learn(elseExamples);
+        if (elseBranch == null) {
+            return null;
+        }
+        return this.nodes.node(NodeFactory.terminal("Ite"), this.preds.get(bestPred), thenBranch, elseBranch);
+    }
+
+    /**
+     * Entropy of the term labels of a set of examples, where every term is weighted by the number of examples of the
+     * set it satisfies.
+     */
+    private double entropy(long[] examples) {
+        long total = 0;
+        int[] weights = new int[this.terms.size()];
+        for (int t = 0; t < weights.length; ++t) {
+            long[] sat = this.termSats.get(t);
+            int weight = 0;
+            for (int w = 0; w < examples.length; ++w) {
+                weight += Long.bitCount(sat[w] & examples[w]);
+            }
+            weights[t] = weight;
+            total += weight;
+        }
+        if (total == 0) {
+            // no term satisfies any of the examples, worse than any set that can still be solved
+            return Math.log(weights.length + 1);
+        }
+        double entropy = 0;
+        for (int weight : weights) {
+            if (weight > 0) {
+                double p = (double) weight / total;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy;
+    }
+
+    private static boolean covers(long[] sat, long[] examples) {
+        for (int w = 0; w < examples.length; ++w) {
+            if ((examples[w] & ~sat[w]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
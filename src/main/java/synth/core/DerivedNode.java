@@ -0,0 +1,40 @@
+package synth.core;
+
+import synth.cfg.Production;
+
+import java.util.List;
+
+/**
+ * Node of a partial program of the top-down search, which knows the production it was built by. Several productions
+ * may share an operator, e.g. over different argument symbols, so the operator alone does not tell which nonterminal
+ * derives each child. Equality stays structural, as for every {@link ASTNode}.
+ */
+final class DerivedNode extends ASTNode {
+    private final Production production;
+    /**
+     * id of the return symbol of the production in the grammar
+     */
+    private final int id;
+
+    DerivedNode(Production production, int id, List<ASTNode> children) {
+        super(production.getOperator(), children);
+        this.production = production;
+        this.id = id;
+    }
+
+    public Production getProduction() {
+        return production;
+    }
+
+    /**
+     * @return the id of the return symbol of the production in the grammar
+     */
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public ASTNode withChildren(List<ASTNode> children) {
+        return new DerivedNode(this.production, this.id, children);
+    }
+}
@@ -1,15 +1,102 @@
 package synth.core;
 
 import synth.cfg.CFG;
-import synth.cfg.Terminal;
+import synth.cfg.GrammarAnalysis;
+import synth.cfg.NonTerminal;
+import synth.cfg.Opcode;
+import synth.cfg.Production;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 public class DivAndConSynthesizer implements ISynthesizer {
 
     /**
-     * Synthesize a program f(x, y, z) based on a context-free grammar and examples
+     * number of worker threads used to grow the banks, 1 means sequential growth
+     */
+    private final int parallelism;
+    /**
+     * pool shared with the synthesizers of sub-problems, null in sequential mode
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * order in which the banks are grown
+     */
+    private final GrowthOrder order;
+    /**
+     * budget of the run, shared with the synthesizers of sub-problems
+     */
+    private Budget budget = Budget.unlimited();
+    /**
+     * why the run stopped before finding a program, shared with the synthesizers of sub-problems
+     */
+    private AtomicReference<SynthesisResult.Status> stopped = new AtomicReference<>();
+    /**
+     * bank entries visited between two checks of the budget
+     */
+    private static final int BUDGET_CHECK_INTERVAL = 4096;
+
+    /**
+     * Order in which the banks are grown.
+     */
+    public enum GrowthOrder {
+        /**
+         * every round combines all programs found so far, so the banks grow fast but mix sizes
+         */
+        ROUNDS,
+        /**
+         * every round adds the programs of the next AST size only, so smaller programs are always found first and
+         * the banks grow one size level at a time
+         */
+        SIZE
+    }
+
+    public DivAndConSynthesizer() {
+        this(1);
+    }
+
+    public DivAndConSynthesizer(int parallelism) {
+        this(parallelism, GrowthOrder.ROUNDS);
+    }
+
+    /**
+     * @param parallelism number of worker threads used to grow the banks. With more than one thread, the tuples of
+     *                    bank entries of every round are split into blocks processed by a fork/join pool, and the
+     *                    result is the one of the sequential growth whatever the scheduling.
+     * @param order       order in which the banks are grown
+     */
+    public DivAndConSynthesizer(int parallelism, GrowthOrder order) {
+        this.parallelism = parallelism;
+        this.order = order;
+    }
+
+    private DivAndConSynthesizer(DivAndConSynthesizer parent) {
+        this.parallelism = parent.parallelism;
+        this.order = parent.order;
+        this.pool = parent.pool;
+        this.budget = parent.budget;
+        this.stopped = parent.stopped;
+        this.subproblems = parent.subproblems;
+        this.rootSize = parent.rootSize;
+        this.cfg = parent.cfg;
+        this.nodes = parent.nodes;
+        this.symbols = parent.symbols;
+        this.predicateSymbols = parent.predicateSymbols;
+        this.leaves = parent.leaves;
+        this.operators = parent.operators;
+        this.divOperator = parent.divOperator;
+        this.maxConjuncts = parent.maxConjuncts;
+        this.maxDisjuncts = parent.maxDisjuncts;
+    }
+
+    /**
+     * Synthesize a program f(x, y, z) based on a context-free grammar and examples. The search goes on until a
+     * program is found or the calling thread is interrupted.
      *
      * @param cfg      the context-free grammar
      * @param examples a list of examples
@@ -17,65 +104,466 @@ public class DivAndConSynthesizer implements ISynthesizer {
      */
     @Override
     public Program synthesize(CFG cfg, List<Example> examples) {
-        ASTNode initResult = doInit(cfg, examples);
+        SynthesisResult result = synthesize(cfg, examples, Budget.unlimited());
+        return result.isSolved() ? result.getProgram() : null;
+    }
+
+    /**
+     * Synthesize a program, checking the budget between rounds, operator groups and every BUDGET_CHECK_INTERVAL
+     * tuples of children. The entries of the budget are those of the banks of the problem being grown.
+     */
+    @Override
+    public SynthesisResult synthesize(CFG cfg, List<Example> examples, Budget budget) {
+        this.budget = budget;
+        this.stopped = new AtomicReference<>();
+        if (this.parallelism > 1) {
+            this.pool = new ForkJoinPool(this.parallelism);
+        }
+        try {
+            return doSynthesize(cfg, examples);
+        } catch (OutOfMemoryError e) {
+            // the banks are dropped with this synthesizer's state
+            this.banks = null;
+            this.exprBank = null;
+            this.predBank = null;
+            this.exprSats = null;
+            return new SynthesisResult(SynthesisResult.Status.OUT_OF_MEMORY, null);
+        } finally {
+            if (this.pool != null) {
+                this.pool.shutdownNow();
+                this.pool = null;
+            }
+        }
+    }
+
+    private SynthesisResult doSynthesize(CFG cfg, List<Example> examples) {
+        this.subproblems = new SubproblemCache(() -> this.exprBank.size());
+        this.rootSize = examples.size();
+        compileGrammar(cfg);
+        ASTNode initResult = doInit(examples);
         if (initResult != null) {
-            return new Program(initResult);
+            return SynthesisResult.solved(new Program(initResult));
         }
         if (checkInfeasibleExamples()) {
-            return null;
+            return new SynthesisResult(SynthesisResult.Status.INFEASIBLE, null);
+        }
+        ASTNode result = runRounds();
+        if (result != null) {
+            return SynthesisResult.solved(new Program(result));
+        }
+        SynthesisResult.Status status = this.stopped.get();
+        return new SynthesisResult(status == null ? SynthesisResult.Status.EXHAUSTED : status, bestPartial());
+    }
+
+    /**
+     * @return the expression of the bank satisfying the most examples, or null if the bank is empty
+     */
+    private Program bestPartial() {
+        int best = -1;
+        int bestCount = -1;
+        for (int i = 0; i < this.exprSats.size(); ++i) {
+            int count = Bits.count(this.exprSats.get(i));
+            if (count > bestCount) {
+                best = i;
+                bestCount = count;
+            }
+        }
+        return best < 0 ? null : new Program(this.exprBank.getNode(best));
+    }
+
+    /**
+     * @return whether the run must stop, recording why the first time
+     */
+    private boolean outOfBudget() {
+        if (this.stopped.get() != null) {
+            return true;
+        }
+        long entries = 0;
+        for (Bank<?> bank : this.banks) {
+            entries += bank == null ? 0 : bank.size();
+        }
+        SynthesisResult.Status status = this.budget.check(entries);
+        if (status == null) {
+            return false;
+        }
+        this.stopped.compareAndSet(null, status);
+        return true;
+    }
+
+    /**
+     * @return visitor that also stops the enumeration every BUDGET_CHECK_INTERVAL tuples if the budget is exhausted
+     */
+    private TupleVisitor checkingBudget(TupleVisitor visitor) {
+        int[] count = new int[1];
+        return tuple -> visitor.visit(tuple) || ++count[0] % BUDGET_CHECK_INTERVAL == 0 && outOfBudget();
+    }
+
+    /**
+     * Solve the sub-problem made of some examples of a parent problem. Instead of starting from the grammar leaves,
+     * the banks start as the parent's banks projected onto these examples, and the tuples the parent has already
+     * combined are not combined again.
+     *
+     * @param parent synthesizer of the parent problem
+     * @param subset indices of the examples of the sub-problem in the parent problem
+     * @return the program or null if none was found within SUBPROBLEM_ROUNDS rounds
+     */
+    private Program synthesizeSubproblem(DivAndConSynthesizer parent, int[] subset) {
+        List<Example> subExamples = new ArrayList<>();
+        this.rootIndices = new int[subset.length];
+        for (int i = 0; i < subset.length; ++i) {
+            subExamples.add(parent.examples.get(subset[i]));
+            this.rootIndices[i] = parent.rootIndices[subset[i]];
+        }
+        initBanks(subExamples, parent);
+        // in SIZE order, first complete the level the parent is growing
+        this.level = parent.level - 1;
+        this.maxRounds = this.order == GrowthOrder.SIZE ? SUBPROBLEM_LEVELS : SUBPROBLEM_ROUNDS;
+        projectBanks(parent, subset);
+        for (int i = 0; i < this.exprBank.size(); ++i) {
+            if (satisfy(this.exprBank.getValues(i))) {
+                return new Program(this.exprBank.getNode(i));
+            }
         }
+        ASTNode result = unify();
+        if (result == null) {
+            result = runRounds();
+        }
+        return result == null ? null : new Program(result);
+    }
 
-        while (true) {
-            growPred();
-            ASTNode result = growExpr();
+    /**
+     * @return the program or null if none was found within maxRounds rounds, or before the budget ran out
+     */
+    private ASTNode runRounds() {
+        for (int round = 0; round < this.maxRounds && !outOfBudget(); ++round) {
+            ASTNode result = grow();
+            if (result == null && this.stopped.get() == null) {
+                result = unify();
+            }
             if (result != null) {
-                return new Program(result);
+                return result;
             }
         }
-//        return null;
+        return null;
     }
 
     /**
-     * eval_example_1|eval_example_|...|eval_example_n -> Index Of AstNode
+     * Fill the banks with the entries of the parent's banks restricted to the examples of the subset, and translate
+     * the frontiers of the parent's operators. Classes are visited in the parent's order, so the classes whose first
+     * parent entry lies below a parent frontier form a prefix of the new bank, which becomes the new frontier.
      */
-    private Map<String, Integer> exprEquivalentClass;
-    private Map<String, Integer> predEquivalentClass;
+    private void projectBanks(DivAndConSynthesizer parent, int[] subset) {
+        // prefixes[symbol id][p] is the size of the new bank once the first p parent entries are projected
+        int[][] prefixes = new int[this.banks.length][];
+        for (NonTerminal symbol : this.symbols) {
+            Bank<?> parentBank = parent.bank(symbol);
+            int[] prefix = new int[parentBank.size() + 1];
+            int level = 0;
+            for (int p = 0; p < parentBank.size(); ++p) {
+                while (level < parentBank.levelCount() && parentBank.levelStart(level) == p) {
+                    bank(symbol).startLevel(level++);
+                }
+                prefix[p] = bank(symbol).size();
+                Object parentValues = parentBank.getValues(p);
+                if (!parentBank.isPredicate()) {
+                    int[] values = new int[subset.length];
+                    for (int i = 0; i < subset.length; ++i) {
+                        values[i] = ((int[]) parentValues)[subset[i]];
+                    }
+                    addProjection(bank(symbol), p, values);
+                } else {
+                    long[] values = new long[Bits.words(subset.length)];
+                    for (int i = 0; i < subset.length; ++i) {
+                        if (Bits.get((long[]) parentValues, subset[i])) {
+                            Bits.set(values, i);
+                        }
+                    }
+                    addProjection(bank(symbol), p, values);
+                }
+            }
+            while (level < parentBank.levelCount()) {
+                bank(symbol).startLevel(level++);
+            }
+            prefix[parentBank.size()] = bank(symbol).size();
+            prefixes[this.cfg.getId(symbol)] = prefix;
+        }
+        for (int o = 0; o < this.operators.size(); ++o) {
+            Operator op = this.operators.get(o);
+            for (int k = 0; k < op.getArity(); ++k) {
+                this.seen[o][k] = prefixes[op.getArgId(k)][parent.seen[o][k]];
+            }
+        }
+    }
+
+    // grammar, shared with the synthesizers of sub-problems
     private CFG cfg;
+    /**
+     * factory of all programs of the run, shared with the synthesizers of sub-problems
+     */
+    private NodeFactory nodes;
+    /**
+     * nonterminals reachable from the start symbol, which is the last one
+     */
+    private List<NonTerminal> symbols;
+    private Set<NonTerminal> predicateSymbols;
+    /**
+     * productions without arguments, evaluated once when the banks are created
+     */
+    private List<Operator> leaves;
+    /**
+     * productions with arguments, in the order they are grown every round: the operators of the predicate
+     * nonterminals first, those of the start symbol last
+     */
+    private List<Operator> operators;
+    /**
+     * the production start ::= Ite(B, start, start) used to combine divided solutions, or null if there is none.
+     * It is not enumerated.
+     */
+    private Operator divOperator;
+    /**
+     * limits of the And/Or predicates built on demand by {@link PredicateSearch} over the condition nonterminal of
+     * divOperator, which are not enumerated either
+     */
+    private int maxConjuncts;
+    private int maxDisjuncts;
+
+    // banks of one problem
     private List<Example> examples;
-    private List<ASTNode> exprList;
-    private List<ASTNode> predList;
-    private final String[] starts = {"1", "2", "3", "x", "y", "z"};
-    private int[] growExprByExprPtrMax;
-    private int[] growPredByExprPtrMax;
-    private int[] growPredBy1PredPtrMax;
-    private int[] growPredBy2PredPtrMax;
-
-    private ASTNode doInit(CFG cfg, List<Example> examples) {
-        this.exprEquivalentClass = new HashMap<>();
-        this.predEquivalentClass = new HashMap<>();
+    /**
+     * the examples stored column by column
+     */
+    private ExampleTable table;
+    /**
+     * banks[id] is the bank of the nonterminal with that id in the grammar, null for unreachable nonterminals
+     */
+    private Bank<?>[] banks;
+    /**
+     * bank of the start symbol
+     */
+    private Bank<int[]> exprBank;
+    /**
+     * exprSats.get(i) is the bitset of examples satisfied by exprBank.getNode(i)
+     */
+    private VectorArena<long[]> exprSats;
+    /**
+     * bank of the condition of divOperator, or null if there is no divOperator
+     */
+    private Bank<long[]> predBank;
+    /**
+     * builds the And/Or predicates asked for by a division, they are not enumerated
+     */
+    private PredicateSearch predSearch;
+    /**
+     * seen[o][k] is the size of the bank of argument k of operators.get(o) when the operator was last grown: tuples
+     * made only of entries below these frontiers were already combined
+     */
+    private int[][] seen;
+    /**
+     * rounds of bank growth before giving up, only bounded for sub-problems
+     */
+    private int maxRounds = Integer.MAX_VALUE;
+    /**
+     * Rounds a sub-problem grows its banks past the projected ones before giving up, so that a division that does
+     * not pan out costs little. A failed subset is attempted again, from larger projected banks, when another
+     * expression leaves the same examples unsatisfied after the top-level bank has grown (see
+     * {@link SubproblemCache}). The bound never loses a program: a division is only a shortcut, and the top-level
+     * problem goes on growing and unifying its banks.
+     */
+    private static final int SUBPROBLEM_ROUNDS = 1;
+    private static final int SUBPROBLEM_LEVELS = 2;
+    private static final int[] NO_CHILDREN = new int[0];
+    /**
+     * AST size of the programs of the last round in SIZE order
+     */
+    private int level;
+    /**
+     * solved and failed sub-problems, shared by all synthesizers of one top-level problem
+     */
+    private SubproblemCache subproblems;
+    /**
+     * number of examples of the top-level problem
+     */
+    private int rootSize;
+    /**
+     * rootIndices[i] is the index of example i in the examples of the top-level problem
+     */
+    private int[] rootIndices;
+
+    /**
+     * Read the productions of every nonterminal reachable from the start symbol, and sort nonterminals into integer
+     * and predicate ones by their operators.
+     */
+    private void compileGrammar(CFG cfg) {
         this.cfg = cfg;
-        this.examples = examples;
-        this.exprList = new ArrayList<>();
-        this.predList = new ArrayList<>();
-        this.growExprByExprPtrMax = new int[]{0, 0};
-        this.growPredByExprPtrMax = new int[]{0, 0};
-        this.growPredBy1PredPtrMax = new int[]{0};
-        this.growPredBy2PredPtrMax = new int[]{0, 0};
-
-        for (String start : this.starts) {
-            ASTNode startSymbol = new ASTNode(new Terminal(start), Collections.emptyList());
-            if (satisfy(startSymbol)) {
-                return startSymbol;
-            }
-            ASTNode divExpr = checkAndSynthesisDiv(startSymbol);
+        this.nodes = new NodeFactory();
+        NonTerminal start = cfg.getStartSymbol();
+        GrammarAnalysis analysis = new GrammarAnalysis(cfg);
+        List<NonTerminal> reachable = new ArrayList<>();
+        for (int id = 0; id < cfg.getNonTerminalCount(); ++id) {
+            NonTerminal symbol = cfg.getNonTerminal(id);
+            if (!analysis.isReachable(symbol)) {
+                continue;
+            }
+            if (cfg.getProductions(id).isEmpty()) {
+                throw new RuntimeException("No production for " + symbol);
+            }
+            reachable.add(symbol);
+        }
+        this.predicateSymbols = new HashSet<>();
+        for (NonTerminal symbol : reachable) {
+            int predicates = 0;
+            List<Production> prods = cfg.getProductions(symbol);
+            for (Production prod : prods) {
+                if (Opcode.isPredicate(new Operator(prod, cfg, this.nodes).getOpcode())) {
+                    ++predicates;
+                }
+            }
+            if (predicates == prods.size()) {
+                this.predicateSymbols.add(symbol);
+            } else if (predicates > 0) {
+                throw new RuntimeException("Mixed integer and predicate productions for " + symbol);
+            }
+        }
+        if (this.predicateSymbols.contains(start)) {
+            throw new RuntimeException("Start symbol " + start + " must be an integer expression");
+        }
+        // predicate nonterminals first and the start symbol last, as the predicates of a round are grown from the
+        // expressions of the previous round
+        this.symbols = new ArrayList<>();
+        for (NonTerminal symbol : reachable) {
+            if (this.predicateSymbols.contains(symbol)) {
+                this.symbols.add(symbol);
+            }
+        }
+        for (NonTerminal symbol : reachable) {
+            if (!this.predicateSymbols.contains(symbol) && !symbol.equals(start)) {
+                this.symbols.add(symbol);
+            }
+        }
+        this.symbols.add(start);
+
+        this.divOperator = null;
+        for (Production prod : cfg.getProductions(start)) {
+            Operator op = new Operator(prod, cfg, this.nodes);
+            if (op.getOpcode() == Opcode.ITE && this.predicateSymbols.contains(op.getArgSymbol(0))
+                    && op.getArgSymbol(1).equals(start) && op.getArgSymbol(2).equals(start)) {
+                this.divOperator = op;
+                break;
+            }
+        }
+        NonTerminal condition = this.divOperator == null ? null : this.divOperator.getArgSymbol(0);
+        this.maxConjuncts = 1;
+        this.maxDisjuncts = 1;
+        this.leaves = new ArrayList<>();
+        this.operators = new ArrayList<>();
+        for (NonTerminal symbol : this.symbols) {
+            for (Production prod : cfg.getProductions(symbol)) {
+                Operator op = new Operator(prod, cfg, this.nodes);
+                if (op.getArity() == 0) {
+                    this.leaves.add(op);
+                    continue;
+                }
+                if (this.divOperator != null && prod == this.divOperator.getProduction()) {
+                    continue;
+                }
+                if (symbol.equals(condition) && op.getArity() == 2 && op.getArgSymbol(0).equals(condition)
+                        && op.getArgSymbol(1).equals(condition)) {
+                    if (op.getOpcode() == Opcode.AND) {
+                        this.maxConjuncts = PredicateSearch.MAX_CONJUNCTS;
+                        continue;
+                    }
+                    if (op.getOpcode() == Opcode.OR) {
+                        this.maxDisjuncts = PredicateSearch.MAX_DISJUNCTS;
+                        continue;
+                    }
+                }
+                this.operators.add(op);
+            }
+        }
+    }
+
+    private ASTNode doInit(List<Example> examples) {
+        this.rootIndices = new int[examples.size()];
+        for (int i = 0; i < this.rootIndices.length; ++i) {
+            this.rootIndices[i] = i;
+        }
+        initBanks(examples, null);
+        if (this.order == GrowthOrder.SIZE) {
+            this.level = 1;
+            for (NonTerminal symbol : this.symbols) {
+                bank(symbol).startLevel(1);
+            }
+        }
+
+        for (Operator leaf : this.leaves) {
+            NonTerminal symbol = leaf.getProduction().getReturnSymbol();
+            ASTNode node = leaf.build();
+            if (this.predicateSymbols.contains(symbol)) {
+                addToBank(bank(symbol), leaf, NO_CHILDREN,
+                        BatchEvaluator.evalPred(CompiledNode.compile(node), this.table));
+                continue;
+            }
+            int[] values = BatchEvaluator.evalExpr(CompiledNode.compile(node), this.table);
+            if (bank(symbol) != this.exprBank) {
+                addToBank(bank(symbol), leaf, NO_CHILDREN, values);
+                continue;
+            }
+            if (satisfy(values)) {
+                return node;
+            }
+            ASTNode divExpr = checkAndSynthesisDiv(() -> node, values);
             if (divExpr != null) {
                 return divExpr;
             }
-            checkAndAddExpr(startSymbol);
+            addToBank(bank(symbol), leaf, NO_CHILDREN, values);
         }
         return null;
     }
 
+    /**
+     * @param parent synthesizer of the parent problem whose banks are projected onto the new ones, or null
+     */
+    private void initBanks(List<Example> examples, DivAndConSynthesizer parent) {
+        this.examples = examples;
+        this.table = new ExampleTable(examples);
+        this.banks = new Bank<?>[this.cfg.getNonTerminalCount()];
+        for (NonTerminal symbol : this.symbols) {
+            if (parent != null) {
+                this.banks[this.cfg.getId(symbol)] = parent.bank(symbol).newProjection(this.banks, examples.size());
+            } else if (this.predicateSymbols.contains(symbol)) {
+                this.banks[this.cfg.getId(symbol)] = Bank.ofPredicates(symbol, this.banks, examples.size());
+            } else {
+                this.banks[this.cfg.getId(symbol)] = Bank.ofExpressions(symbol, this.banks, examples.size());
+            }
+        }
+        this.exprBank = expressionBank(this.cfg.getStartSymbol());
+        this.exprSats = VectorArena.ofLongs(Bits.words(examples.size()),
+                parent == null ? VectorArena.DEFAULT_SIZE : parent.exprBank.size());
+        if (this.divOperator != null) {
+            this.predBank = predicateBank(this.divOperator.getArgSymbol(0));
+            this.predSearch = new PredicateSearch(this.table.size(), this.predBank.getNodes(),
+                    this.predBank.getValueList(), this.maxConjuncts, this.maxDisjuncts, this.nodes);
+        }
+        this.seen = new int[this.operators.size()][];
+        for (int o = 0; o < this.seen.length; ++o) {
+            this.seen[o] = new int[this.operators.get(o).getArity()];
+        }
+    }
+
+    private Bank<?> bank(NonTerminal symbol) {
+        return this.banks[this.cfg.getId(symbol)];
+    }
+
+    @SuppressWarnings("unchecked")
+    private Bank<int[]> expressionBank(NonTerminal symbol) {
+        return (Bank<int[]>) bank(symbol);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Bank<long[]> predicateBank(NonTerminal symbol) {
+        return (Bank<long[]>) bank(symbol);
+    }
+
     private boolean checkInfeasibleExamples() {
         // check conflict examples
         Map<String, Integer> map = new HashMap<>();
@@ -92,222 +580,590 @@ public class DivAndConSynthesizer implements ISynthesizer {
                 }
             }
         }
-        // check out of range examples
-        for (Example example : this.examples) {
-            int x = example.getInput().get("x");
-            int y = example.getInput().get("y");
-            int z = example.getInput().get("z");
-            // min value among x,y,x,1,2,3
-            int min = Math.min(x, Math.min(y, Math.min(z, 1)));
-            int output = example.getOutput();
-            if ((min == 0 || min == 1) && output < min) {
-                return true;
-            }
-        }
         return false;
     }
 
-    // invoke secondly
-    private ASTNode growExpr() {
-        int exprSize = exprList.size();
-        for (int i = 0; i < exprSize; ++i) {
-            for (int j = i; j < exprSize; ++j) {
-                if (i < growExprByExprPtrMax[0] && j < growExprByExprPtrMax[1]) {
-                    continue;
-                }
-                ASTNode result = growExprByExpr(exprList.get(i), exprList.get(j));
-                if (result != null) {
-                    return result;
-                }
+    private interface TupleVisitor {
+        /**
+         * @param tuple indices of the children in the banks of the arguments
+         * @return whether to stop the enumeration
+         */
+        boolean visit(int[] tuple);
+    }
+
+    /**
+     * Grow every operator by one round: in ROUNDS order over all tuples with a child added since the last round, in
+     * SIZE order over the tuples making programs of the next AST size. Consecutive operators of the same nonterminal
+     * over the same argument symbols form a group and are applied together to every tuple of children.
+     *
+     * @return a program satisfying all examples if one was found
+     */
+    private ASTNode grow() {
+        if (this.order == GrowthOrder.SIZE) {
+            ++this.level;
+            for (NonTerminal symbol : this.symbols) {
+                bank(symbol).startLevel(this.level);
+            }
+        }
+        int[] bankSizes = null;
+        for (int o = 0, end; o < this.operators.size(); o = end) {
+            if (outOfBudget()) {
+                return null;
+            }
+            end = groupEnd(o);
+            Bank<?> bank = bank(this.operators.get(o).getProduction().getReturnSymbol());
+            if (startsBank(o)) {
+                bankSizes = bankSizes();
+            }
+            ASTNode result;
+            if (this.order == GrowthOrder.SIZE) {
+                result = growLevel(o, end, bank);
+            } else if (this.pool != null && this.operators.get(o).getArity() == 2) {
+                result = growPairsInParallel(o, end, bank, bankSizes);
+            } else {
+                result = growGroup(o, end, bank, bankSizes);
+            }
+            if (result != null) {
+                return result;
             }
         }
-        growExprByExprPtrMax[0] = growExprByExprPtrMax[1] = exprSize;
         return null;
     }
 
-    //invoke firstly
-    private void growPred() {
-        int exprSize = exprList.size();
-        for (int i = 0; i < exprSize; ++i) {
-            for (int j = i; j < exprSize; ++j) {
-                if (i < growPredByExprPtrMax[0] && j < growPredByExprPtrMax[1]) {
-                    continue;
-                }
-                growPredByExpr(exprList.get(i), exprList.get(j));
+    /**
+     * @return the end (exclusive) of the group of operators starting at operators.get(o)
+     */
+    private int groupEnd(int o) {
+        Operator first = this.operators.get(o);
+        int end = o + 1;
+        while (end < this.operators.size()) {
+            Operator op = this.operators.get(end);
+            if (!op.getProduction().getReturnSymbol().equals(first.getProduction().getReturnSymbol())
+                    || !op.getProduction().getArgumentSymbols().equals(first.getProduction().getArgumentSymbols())
+                    || op.isSymmetric() != first.isSymmetric()) {
+                break;
             }
+            ++end;
         }
-        growPredByExprPtrMax[0] = growPredByExprPtrMax[1] = exprSize;
+        return end;
+    }
+
+    /**
+     * @return whether operators.get(o) is the first operator of its nonterminal, as operators are grouped by
+     * nonterminal
+     */
+    private boolean startsBank(int o) {
+        return o == 0 || !this.operators.get(o).getProduction().getReturnSymbol()
+                .equals(this.operators.get(o - 1).getProduction().getReturnSymbol());
+    }
+
+    /**
+     * The operators of one nonterminal all combine the entries the banks had when the nonterminal started growing
+     * in the round, so that the programs they add are not combined again by the next operators in the same round.
+     *
+     * @return the current size of every bank, by nonterminal id
+     */
+    private int[] bankSizes() {
+        int[] sizes = new int[this.banks.length];
+        for (NonTerminal symbol : this.symbols) {
+            sizes[this.cfg.getId(symbol)] = bank(symbol).size();
+        }
+        return sizes;
+    }
 
-        // memorize size to avoid infinite loop as we change the list size
-        int predSize = predList.size();
-        for (int i = 0; i < predSize; ++i) {
-            if (i < growPredBy1PredPtrMax[0]) {
+    private Bank<?>[] argBanks(Operator op) {
+        Bank<?>[] argBanks = new Bank<?>[op.getArity()];
+        for (int k = 0; k < argBanks.length; ++k) {
+            argBanks[k] = this.banks[op.getArgId(k)];
+        }
+        return argBanks;
+    }
+
+    /**
+     * Apply the operators [from, to) to every tuple of bank entries with at least one entry added since their last
+     * round.
+     *
+     * @param bankSizes number of entries of every bank to combine
+     */
+    private ASTNode growGroup(int from, int to, Bank<?> bank, int[] bankSizes) {
+        Operator first = this.operators.get(from);
+        Bank<?>[] argBanks = argBanks(first);
+        int[] sizes = new int[first.getArity()];
+        for (int k = 0; k < sizes.length; ++k) {
+            sizes[k] = bankSizes[first.getArgId(k)];
+        }
+        ASTNode[] result = new ASTNode[1];
+        if (forEachNewTuple(sizes, this.seen[from], first.isSymmetric(),
+                checkingBudget(tuple -> (result[0] = applyGroup(from, to, bank, argBanks, tuple)) != null))) {
+            // found a program, or ran out of budget with the tuples only partly visited
+            return result[0];
+        }
+        for (int o = from; o < to; ++o) {
+            this.seen[o] = sizes;
+        }
+        return null;
+    }
+
+    /**
+     * Apply the operators [from, to) to the tuples of bank entries making programs of AST size level, i.e. for every
+     * split of level - 1 into the sizes of the children, to the product of the entries of these sizes.
+     */
+    private <V> ASTNode growLevel(int from, int to, Bank<V> bank) {
+        Operator first = this.operators.get(from);
+        Bank<?>[] argBanks = argBanks(first);
+        List<int[][]> ranges = new ArrayList<>();
+        for (int[] sizes : compositions(this.level - 1, first.getArity())) {
+            if (first.isSymmetric() && sizes[0] > sizes[1]) {
+                // visited as the split with the two sizes swapped
                 continue;
             }
-            growPredBy1Pred(predList.get(i));
+            int[] starts = new int[sizes.length];
+            int[] ends = new int[sizes.length];
+            for (int k = 0; k < sizes.length; ++k) {
+                starts[k] = argBanks[k].levelStart(sizes[k]);
+                ends[k] = argBanks[k].levelStart(sizes[k] + 1);
+            }
+            ranges.add(new int[][]{starts, ends, {first.isSymmetric() && sizes[0] == sizes[1] ? 1 : 0}});
         }
-        growPredBy1PredPtrMax[0] = predSize;
-
-        for (int i = 0; i < predSize; ++i) {
-            //start from i + 1 because And(pred[i], pred[i]) = pred[i], Or(pred[i], pred[i]) = pred[i]
-            for (int j = i + 1; j < predSize; ++j) {
-                if (i < growPredBy2PredPtrMax[0] && j < growPredBy2PredPtrMax[1]) {
-                    continue;
+        if (this.pool == null) {
+            ASTNode[] result = new ASTNode[1];
+            for (int[][] range : ranges) {
+                if (forEachTupleInRanges(range[0], range[1], range[2][0] == 1,
+                        checkingBudget(tuple -> (result[0] = applyGroup(from, to, bank, argBanks, tuple)) != null))) {
+                    return result[0];
                 }
-                growPredBy2Pred(predList.get(i), predList.get(j));
             }
+            return null;
+        }
+        // every split is cut into blocks of consecutive first children, and a candidate is ordered by its block
+        // and its position in the block, which is the sequential enumeration order
+        CandidateTable<V> pending = bank.newCandidateTable();
+        AtomicReference<CandidateTable.Candidate<V>> solution = new AtomicReference<>();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int[][] range : ranges) {
+            int rows = range[1][0] - range[0][0];
+            int blockRows = Math.max(1, (rows + this.parallelism * 8 - 1) / (this.parallelism * 8));
+            for (int row = range[0][0]; row < range[1][0]; row += blockRows) {
+                int[] starts = range[0].clone();
+                int[] ends = range[1].clone();
+                starts[0] = row;
+                ends[0] = Math.min(row + blockRows, range[1][0]);
+                long block = tasks.size();
+                tasks.add(this.pool.submit(() -> {
+                    long[] position = new long[1];
+                    forEachTupleInRanges(starts, ends, range[2][0] == 1, tuple -> {
+                        if (this.stopped.get() != null) {
+                            return true;
+                        }
+                        offerGroup(from, to, bank, argBanks, tuple, (block << 32) + position[0]++, pending, solution);
+                        return position[0] % BUDGET_CHECK_INTERVAL == 0 && outOfBudget();
+                    });
+                }));
+            }
+        }
+        awaitAll(tasks);
+        if (this.stopped.get() != null) {
+            return null;
         }
-        growPredBy2PredPtrMax[0] = growPredBy2PredPtrMax[1] = predSize;
+        return mergeCandidates(bank, pending, solution);
     }
 
-    private ASTNode growExprByExpr(ASTNode left, ASTNode right) {
-        String[] ops = {"Add", "Multiply"};
-        for (String op : ops) {
-            ASTNode newExpr = new ASTNode(new Terminal(op), List.of(left, right));
-            if (satisfy(newExpr)) {
-                return newExpr;
+    /**
+     * @return every way to write total as an ordered sum of parts positive integers, in lexicographic order
+     */
+    private static List<int[]> compositions(int total, int parts) {
+        List<int[]> result = new ArrayList<>();
+        addCompositions(total, new int[parts], 0, result);
+        return result;
+    }
+
+    private static void addCompositions(int rest, int[] parts, int k, List<int[]> result) {
+        if (k == parts.length - 1) {
+            if (rest >= 1) {
+                parts[k] = rest;
+                result.add(parts.clone());
             }
-            ASTNode divExpr = checkAndSynthesisDiv(newExpr);
-            if (divExpr != null) {
-                return divExpr;
+            return;
+        }
+        for (int part = 1; part <= rest - (parts.length - 1 - k); ++part) {
+            parts[k] = part;
+            addCompositions(rest - part, parts, k + 1, result);
+        }
+    }
+
+    /**
+     * Apply the operators [from, to) to one tuple of children and add the new programs to their bank.
+     *
+     * @return a program satisfying all examples if one was found
+     */
+    private ASTNode applyGroup(int from, int to, Bank<?> bank, Bank<?>[] argBanks, int[] tuple) {
+        Object[] args = new Object[tuple.length];
+        for (int k = 0; k < tuple.length; ++k) {
+            args[k] = argBanks[k].getValues(tuple[k]);
+        }
+        for (int o = from; o < to; ++o) {
+            Operator op = this.operators.get(o);
+            Object values = op.apply(args, this.table.size());
+            if (bank == this.exprBank) {
+                if (satisfy((int[]) values)) {
+                    return bank.build(op, tuple);
+                }
+                ASTNode divExpr = checkAndSynthesisDiv(() -> bank.build(op, tuple), (int[]) values);
+                if (divExpr != null) {
+                    return divExpr;
+                }
             }
-            checkAndAddExpr(newExpr);
+            addToBank(bank, op, tuple, values);
         }
         return null;
     }
 
-    private ASTNode checkAndSynthesisDiv(ASTNode expr) {
-        // use the same encoding way as predEquivalentClass
-        String satBitMap = getSatExamples(expr);
-        if (!checkDiv(satBitMap)) {
-            return null;
+    /**
+     * Visit the index tuples with tuple[k] < sizes[k] and tuple[k] >= seen[k] for some k, in lexicographic order.
+     *
+     * @param symmetric whether to visit nondecreasing tuples only
+     * @return whether the visitor stopped the enumeration
+     */
+    private static boolean forEachNewTuple(int[] sizes, int[] seen, boolean symmetric, TupleVisitor visitor) {
+        return visitTuples(sizes, seen, symmetric, new int[sizes.length], 0, false, visitor);
+    }
+
+    private static boolean visitTuples(int[] sizes, int[] seen, boolean symmetric, int[] tuple, int k,
+                                       boolean hasNew, TupleVisitor visitor) {
+        if (k == tuple.length) {
+            return visitor.visit(tuple);
         }
-        ASTNode divPred = findDivPred(satBitMap);
-        if (divPred == null) {
-            return null;
+        int first = symmetric && k > 0 ? tuple[k - 1] : 0;
+        if (k == tuple.length - 1 && !hasNew) {
+            // the last index must be new if none of the others is
+            first = Math.max(first, seen[k]);
         }
-        List<Example> unSatExamples = new ArrayList<>();
-        for (int i = 0; i < satBitMap.length(); ++i) {
-            if (satBitMap.charAt(i) == '0') {
-                unSatExamples.add(this.examples.get(i));
+        for (int i = first; i < sizes[k]; ++i) {
+            tuple[k] = i;
+            if (visitTuples(sizes, seen, symmetric, tuple, k + 1, hasNew || i >= seen[k], visitor)) {
+                return true;
             }
         }
-        DivAndConSynthesizer divAndConSynthesizer = new DivAndConSynthesizer();
-        Program unSatPart = divAndConSynthesizer.synthesize(this.cfg, unSatExamples);
-        if (unSatPart == null) {
-            return null;
+        return false;
+    }
+
+    /**
+     * Visit the index tuples with starts[k] <= tuple[k] < ends[k], in lexicographic order.
+     *
+     * @param symmetric whether to visit nondecreasing tuples only, for two arguments over the same range
+     * @return whether the visitor stopped the enumeration
+     */
+    private static boolean forEachTupleInRanges(int[] starts, int[] ends, boolean symmetric, TupleVisitor visitor) {
+        return visitTuplesInRanges(starts, ends, symmetric, new int[starts.length], 0, visitor);
+    }
+
+    private static boolean visitTuplesInRanges(int[] starts, int[] ends, boolean symmetric, int[] tuple, int k,
+                                               TupleVisitor visitor) {
+        if (k == tuple.length) {
+            return visitor.visit(tuple);
         }
-        return new ASTNode(new Terminal("Ite"), List.of(
-                divPred,
-                expr,
-                unSatPart.getRoot()
-        ));
+        int first = symmetric && k > 0 ? Math.max(starts[k], tuple[k - 1]) : starts[k];
+        for (int i = first; i < ends[k]; ++i) {
+            tuple[k] = i;
+            if (visitTuplesInRanges(starts, ends, symmetric, tuple, k + 1, visitor)) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private ASTNode findDivPred(String bitMap) {
-        Integer predIdx = this.predEquivalentClass.get(bitMap);
-        if (predIdx == null) {
+    private <V> ASTNode growPairsInParallel(int from, int to, Bank<V> bank, int[] bankSizes) {
+        Operator first = this.operators.get(from);
+        Bank<?>[] argBanks = argBanks(first);
+        int rows = bankSizes[first.getArgId(0)];
+        int columns = bankSizes[first.getArgId(1)];
+        CandidateTable<V> pending = bank.newCandidateTable();
+        AtomicReference<CandidateTable.Candidate<V>> solution = new AtomicReference<>();
+        forEachPairInParallel(rows, columns, this.seen[from], first.isSymmetric(), (i, j) -> {
+            if (this.stopped.get() != null) {
+                return true;
+            }
+            offerGroup(from, to, bank, argBanks, new int[]{i, j}, (long) i * columns + j, pending, solution);
+            return false;
+        });
+        if (this.stopped.get() != null) {
             return null;
         }
-        return this.predList.get(predIdx);
+        ASTNode result = mergeCandidates(bank, pending, solution);
+        if (result != null) {
+            return result;
+        }
+        for (int o = from; o < to; ++o) {
+            this.seen[o] = new int[]{rows, columns};
+        }
+        return null;
     }
 
-    private String getSatExamples(ASTNode expr) {
-        StringBuilder bitMap = new StringBuilder();
-        for (Example example : this.examples) {
-            if (Interpreter.evaluateExpr(expr, example.getInput()) == example.getOutput()) {
-                bitMap.append('1');
-            } else {
-                bitMap.append('0');
+    /**
+     * Parallel counterpart of {@link #applyGroup}: offer the new programs as candidates instead of adding them to
+     * the bank, which must not be modified while the pool runs, and the programs satisfying enough examples to be
+     * checked for a division.
+     *
+     * @param seq position of the tuple in the sequential enumeration order
+     */
+    private <V> void offerGroup(int from, int to, Bank<V> bank, Bank<?>[] argBanks, int[] tuple, long seq,
+                                CandidateTable<V> pending, AtomicReference<CandidateTable.Candidate<V>> solution) {
+        Object[] args = new Object[tuple.length];
+        int size = 1;
+        for (int k = 0; k < tuple.length; ++k) {
+            args[k] = argBanks[k].getValues(tuple[k]);
+            size += argBanks[k].nodeSize(tuple[k]);
+        }
+        for (int o = from; o < to; ++o) {
+            Operator op = this.operators.get(o);
+            V values = bank.cast(op.apply(args, this.table.size()));
+            long opSeq = seq * (to - from) + (o - from);
+            if (bank == this.exprBank && satisfy((int[]) values)) {
+                offerSolution(solution, new CandidateTable.Candidate<>(op, tuple.clone(), values, size, opSeq, -1));
+                continue;
+            }
+            int existing = bank.indexOf(values);
+            CandidateTable.Candidate<V> candidate = null;
+            if (bank == this.exprBank && this.divOperator != null && satisfiesMost((int[]) values)) {
+                candidate = new CandidateTable.Candidate<>(op, tuple.clone(), values, size, opSeq, existing);
+                pending.offerCheck(candidate);
             }
+            if (existing >= 0 && size >= bank.nodeSize(existing)) {
+                continue;
+            }
+            pending.offer(candidate != null ? candidate
+                    : new CandidateTable.Candidate<>(op, tuple.clone(), values, size, opSeq, existing));
         }
-        return bitMap.toString();
     }
-    private boolean checkDiv(String bitMap) {
-        int count = 0;
-        for (char c : bitMap.toCharArray()) {
-            if (c == '1') {
-                ++count;
+
+    /**
+     * Merge the candidates of a parallel step into the bank and check the ones to check for a division, in the
+     * sequential enumeration order up to the solution of the step, as the sequential enumeration does.
+     *
+     * @return the program found by a division before the solution, or the solution found by the step
+     */
+    private <V> ASTNode mergeCandidates(Bank<V> bank, CandidateTable<V> pending,
+                                        AtomicReference<CandidateTable.Candidate<V>> solution) {
+        long end = solution.get() == null ? Long.MAX_VALUE : solution.get().seq;
+        List<CandidateTable.Candidate<V>> checks = pending.drainChecks();
+        // with a solution and nothing to check before it, only the programs of the classes it may have as children
+        // matter
+        boolean newClasses = end == Long.MAX_VALUE || !checks.isEmpty() && checks.get(0).seq < end;
+        List<CandidateTable.Candidate<V>> candidates = pending.drain(newClasses);
+        for (int c = 0, k = 0; ; ) {
+            // a program is checked for a division before it is added
+            boolean check = k < checks.size()
+                    && (c == candidates.size() || checks.get(k).seq <= candidates.get(c).seq);
+            if (!check && c == candidates.size()) {
+                break;
+            }
+            CandidateTable.Candidate<V> candidate = check ? checks.get(k++) : candidates.get(c++);
+            if (candidate.seq >= end) {
+                break;
+            }
+            if (check) {
+                ASTNode divExpr = checkAndSynthesisDiv(() -> bank.build(candidate.op, candidate.children),
+                        (int[]) candidate.values);
+                if (divExpr != null) {
+                    return divExpr;
+                }
+            } else {
+                addToBank(bank, candidate.op, candidate.children, candidate.values);
             }
         }
-        return count > bitMap.length() / 2;
+        return solution.get() == null ? null : bank.build(solution.get().op, solution.get().children);
     }
 
-    private void growPredByExpr(ASTNode left, ASTNode right) {
-        // need copy or not? If later process does not modify, we do not need to copy to save space.
-        List<ASTNode> newPredList = List.of(
-                new ASTNode(new Terminal("Lt"), List.of(left, right)),
-                new ASTNode(new Terminal("Lt"), List.of(right, left)),
-                new ASTNode(new Terminal("Eq"), List.of(left, right))
-        );
-        for (ASTNode newPred : newPredList) {
-            checkAndAddPred(newPred);
-        }
+    private static <V> void offerSolution(AtomicReference<CandidateTable.Candidate<V>> solution,
+                                          CandidateTable.Candidate<V> candidate) {
+        CandidateTable.Candidate<V> current;
+        do {
+            current = solution.get();
+            if (current != null && current.seq < candidate.seq) {
+                return;
+            }
+        } while (!solution.compareAndSet(current, candidate));
     }
 
-    private void growPredBy2Pred(ASTNode left, ASTNode right) {
-        String[] ops = {"And", "Or"};
-        for (String op : ops) {
-            ASTNode newPred = new ASTNode(new Terminal(op), List.of(left, right));
-            checkAndAddPred(newPred);
+    /**
+     * Visit the pairs of bank indices that are new since the last round, split into blocks run by the pool. Every
+     * block stops once the budget is exhausted, which it checks every BUDGET_CHECK_INTERVAL pairs. The banks must
+     * not be modified until this returns.
+     */
+    private void forEachPairInParallel(int rows, int columns, int[] seen, boolean triangular,
+                                       PairBlocks.PairVisitor visitor) {
+        PairBlocks blocks = new PairBlocks(rows, columns, seen, triangular, this.parallelism * 8);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int b = 0; b < blocks.count(); ++b) {
+            int block = b;
+            tasks.add(this.pool.submit(() -> {
+                int[] count = new int[1];
+                blocks.visit(block, (i, j) -> visitor.visit(i, j)
+                        || ++count[0] % BUDGET_CHECK_INTERVAL == 0 && outOfBudget());
+            }));
         }
+        awaitAll(tasks);
     }
 
-    private void growPredBy1Pred(ASTNode pred) {
-        String[] ops = {"Not"};
-        for (String op : ops) {
-            ASTNode newPred = new ASTNode(new Terminal(op), List.of(pred));
-            checkAndAddPred(newPred);
+    /**
+     * Wait for the tasks of a parallel step. The workers run on pool threads and poll the shared stopped status, so
+     * an interrupt of the calling thread is forwarded to them as a cancellation; the wait still goes on until every
+     * task has returned, as the banks must not be modified before.
+     */
+    private void awaitAll(List<ForkJoinTask<?>> tasks) {
+        boolean interrupted = false;
+        for (ForkJoinTask<?> task : tasks) {
+            if (!interrupted) {
+                try {
+                    task.get();
+                    continue;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    this.stopped.compareAndSet(null, SynthesisResult.Status.CANCELLED);
+                } catch (ExecutionException e) {
+                    // rethrown by join
+                }
+            }
+            task.join();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
     }
 
     /**
-     * @param expr expression
+     * @param expr   builds the program, only called if a division is found, so that the AST of a program is not
+     *               built when it only goes to a bank
+     * @param values value vector of the program
      */
-    private void checkAndAddExpr(ASTNode expr) {
-        List<String> outputs = this.examples.stream()
-                .map(i -> Interpreter.evaluateExpr(expr, i.getInput()))
-                .map(i -> Integer.toString(i))
-                .collect(Collectors.toList());
-        String key = String.join("|", outputs);
-        if (this.exprEquivalentClass.containsKey(key)) {
-            int originalIdx = this.exprEquivalentClass.get(key);
-            if (expr.size() < this.exprList.get(originalIdx).size()) {
-                this.exprList.set(originalIdx, expr);
+    private ASTNode checkAndSynthesisDiv(Supplier<ASTNode> expr, int[] values) {
+        if (this.divOperator == null) {
+            return null;
+        }
+        // use the same encoding way as the predicate bank
+        long[] satBitMap = getSatExamples(values);
+        if (!checkDiv(satBitMap)) {
+            return null;
+        }
+        ASTNode divPred = findDivPred(satBitMap);
+        if (divPred == null) {
+            return null;
+        }
+        int[] unSatExamples = new int[this.examples.size() - Bits.count(satBitMap)];
+        long[] unSatRootExamples = new long[Bits.words(this.rootSize)];
+        for (int i = 0, k = 0; i < this.examples.size(); ++i) {
+            if (!Bits.get(satBitMap, i)) {
+                unSatExamples[k++] = i;
+                Bits.set(unSatRootExamples, this.rootIndices[i]);
+            }
+        }
+        // the same subset comes back for every expression with the same satisfied examples
+        Program unSatPart = this.subproblems.getSolution(unSatRootExamples);
+        if (unSatPart == null) {
+            if (this.subproblems.isKnownFailure(unSatRootExamples)) {
+                return null;
+            }
+            DivAndConSynthesizer divAndConSynthesizer = new DivAndConSynthesizer(this);
+            unSatPart = divAndConSynthesizer.synthesizeSubproblem(this, unSatExamples);
+            if (unSatPart == null) {
+                this.subproblems.putFailure(unSatRootExamples);
+                return null;
             }
-        } else {
-            this.exprEquivalentClass.put(key, this.exprList.size());
-            this.exprList.add(expr);
+            this.subproblems.putSolution(unSatRootExamples, unSatPart);
         }
+        return this.divOperator.build(divPred, expr.get(), unSatPart.getRoot());
     }
 
     /**
-     * @param pred predicate
+     * Pick expressions of the bank that jointly satisfy all examples (see {@link TermSolver}) and combine them into a
+     * conditional program, splitting the examples with predicates of the bank (see {@link DecisionTreeUnifier}).
+     *
+     * @return the program or null if the current banks are not enough
      */
-    private void checkAndAddPred(ASTNode pred) {
-        List<String> outputs = this.examples.stream()
-                .map(i -> Interpreter.evaluatePred(pred, i.getInput()))
-                .map(i -> (i ? "1" : "0"))
-                .collect(Collectors.toList());
-        String key = String.join("", outputs);
-        if (this.predEquivalentClass.containsKey(key)) {
-            int originalIdx = this.predEquivalentClass.get(key);
-            if (pred.size() < this.predList.get(originalIdx).size()) {
-                this.predList.set(originalIdx, pred);
-            }
-        } else {
-            this.predEquivalentClass.put(key, this.predList.size());
-            this.predList.add(pred);
+    private ASTNode unify() {
+        if (this.divOperator == null) {
+            return null;
+        }
+        List<Integer> cover = TermSolver.greedyCover(this.table.size(), this.exprSats.asList());
+        if (cover == null) {
+            return null;
+        }
+        List<ASTNode> terms = new ArrayList<>();
+        List<long[]> termSats = new ArrayList<>();
+        for (int i : cover) {
+            terms.add(this.exprBank.getNode(i));
+            termSats.add(this.exprSats.get(i));
         }
+        return new DecisionTreeUnifier(this.table.size(), terms, termSats, this.predBank.getNodes(),
+                this.predBank.getValueList(), this.nodes).unify();
     }
 
+    /**
+     * Look up a predicate holding exactly on the examples of bitMap, and otherwise combine predicates of the bank into
+     * one with And/Or. In ROUNDS order, a combined predicate is added to the bank so that it is found directly next
+     * time; in SIZE order it is not, as it would break the order of the size levels.
+     */
+    private ASTNode findDivPred(long[] bitMap) {
+        int predIdx = this.predBank.indexOf(bitMap);
+        if (predIdx >= 0) {
+            return this.predBank.getNode(predIdx);
+        }
+        ASTNode pred = this.predSearch.find(bitMap);
+        if (pred != null && this.order == GrowthOrder.ROUNDS) {
+            this.predBank.add(pred, bitMap);
+        }
+        return pred;
+    }
 
-    private boolean satisfy(ASTNode root) {
-        for (Example example : this.examples) {
-            if (Interpreter.evaluateExpr(root, example.getInput()) != example.getOutput()) {
+    private long[] getSatExamples(int[] values) {
+        long[] bitMap = new long[Bits.words(values.length)];
+        BatchEvaluator.eq(values, this.table.getOutputs(), bitMap);
+        return bitMap;
+    }
+
+    private boolean checkDiv(long[] bitMap) {
+        return Bits.count(bitMap) > this.table.size() / 2;
+    }
+
+    /**
+     * @return whether checkDiv holds for the examples the values satisfy, without building their bitset
+     */
+    private boolean satisfiesMost(int[] values) {
+        int[] outputs = this.table.getOutputs();
+        int misses = values.length - values.length / 2;
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] != outputs[i] && --misses == 0) {
                 return false;
             }
         }
         return true;
     }
+
+    /**
+     * Add the program op(children) to its bank.
+     *
+     * @param bank     bank of the nonterminal of the program
+     * @param children indices of the children in the banks of the argument symbols of op
+     * @param values   value vector of the program, int[] or a bitset depending on the nonterminal
+     */
+    private <V> void addToBank(Bank<V> bank, Operator op, int[] children, Object values) {
+        recordSats(bank, bank.add(op, children, bank.cast(values)), values);
+    }
+
+    /**
+     * Add an entry of the parent's bank to the corresponding bank of this sub-problem.
+     */
+    private <V> void addProjection(Bank<V> bank, int parentIndex, Object values) {
+        recordSats(bank, bank.addProjection(parentIndex, bank.cast(values)), values);
+    }
+
+    private void recordSats(Bank<?> bank, int index, Object values) {
+        if (index >= 0 && bank == this.exprBank) {
+            this.exprSats.add(getSatExamples((int[]) values));
+        }
+    }
+
+    private boolean satisfy(int[] values) {
+        return Arrays.equals(values, this.table.getOutputs());
+    }
 }
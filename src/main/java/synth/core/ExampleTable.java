@@ -0,0 +1,53 @@
+package synth.core;
+
+import synth.cfg.Opcode;
+
+import java.util.List;
+
+/**
+ * Examples stored column by column: one int array per variable slot plus one for the outputs, so that a program can
+ * be evaluated over all examples with tight loops on primitive arrays.
+ */
+public final class ExampleTable {
+    /**
+     * columns[slot][i] is the value of variable Opcode.VARIABLES[slot] in example i
+     */
+    private final int[][] columns;
+    /**
+     * outputs[i] is the expected output of example i
+     */
+    private final int[] outputs;
+
+    public ExampleTable(List<Example> examples) {
+        int size = examples.size();
+        this.columns = new int[Opcode.VARIABLES.length][size];
+        this.outputs = new int[size];
+        for (int i = 0; i < size; ++i) {
+            Example example = examples.get(i);
+            for (int slot = 0; slot < this.columns.length; ++slot) {
+                Integer value = example.getInput().get(Opcode.VARIABLES[slot]);
+                this.columns[slot][i] = value == null ? 0 : value;
+            }
+            this.outputs[i] = example.getOutput();
+        }
+    }
+
+    public int size() {
+        return this.outputs.length;
+    }
+
+    /**
+     * @param slot variable slot, see {@link Opcode#slotOf}
+     * @return values of the variable in every example; must not be modified
+     */
+    public int[] getColumn(int slot) {
+        return this.columns[slot];
+    }
+
+    /**
+     * @return expected outputs of every example; must not be modified
+     */
+    public int[] getOutputs() {
+        return this.outputs;
+    }
+}
@@ -0,0 +1,26 @@
+package synth.core;
+
+import synth.cfg.NonTerminal;
+
+import java.util.List;
+
+/**
+ * Hole of a partial program of the top-down search, which knows the id of its nonterminal in the grammar, so that
+ * the analyses of partial programs index their tables without looking the symbol up. Equality stays structural, as
+ * for every {@link ASTNode}.
+ */
+final class HoleNode extends ASTNode {
+    private final int id;
+
+    HoleNode(NonTerminal symbol, int id) {
+        super(symbol, List.of());
+        this.id = id;
+    }
+
+    /**
+     * @return the id of the nonterminal in the grammar
+     */
+    public int getId() {
+        return id;
+    }
+}
@@ -8,4 +8,16 @@ public interface ISynthesizer {
 
     public Program synthesize(CFG cfg, List<Example> examples);
 
+    /**
+     * Synthesize a program within a budget. Synthesizers that do not override this ignore the budget and report a
+     * failure as EXHAUSTED.
+     *
+     * @return the status of the run with the program, or the best partial solution if it is not solved
+     */
+    public default SynthesisResult synthesize(CFG cfg, List<Example> examples, Budget budget) {
+        Program program = synthesize(cfg, examples);
+        return program != null ? SynthesisResult.solved(program)
+                : new SynthesisResult(SynthesisResult.Status.EXHAUSTED, null);
+    }
+
 }
@@ -1,5 +1,8 @@
 package synth.core;
 
+import synth.cfg.Opcode;
+import synth.cfg.Terminal;
+
 import java.util.Map;
 
 public class Interpreter {
@@ -36,20 +39,22 @@ public class Interpreter {
     }
 
     public int evalExpr(ASTNode expr) {
-        switch (expr.getSymbol().getName()) {
-            case "Ite":
+        switch (opcodeOf(expr)) {
+            case Opcode.ITE:
                 return evalIte(expr);
-            case "Add":
+            case Opcode.ADD:
                 return evalAdd(expr);
-            case "Multiply":
+            case Opcode.MULTIPLY:
                 return evalMultiply(expr);
-            case "x":
-            case "y":
-            case "z":
+            case Opcode.SUBTRACT:
+                return evalSubtract(expr);
+            case Opcode.MIN:
+                return evalMin(expr);
+            case Opcode.MAX:
+                return evalMax(expr);
+            case Opcode.VAR:
                 return evalVar(expr);
-            case "1":
-            case "2":
-            case "3":
+            case Opcode.CONST:
                 return evalConst(expr);
             default:
                 throw new RuntimeException("Cannot evaluate expression " + expr);
@@ -57,22 +62,26 @@ public class Interpreter {
     }
 
     public boolean evalPred(ASTNode pred) {
-        switch (pred.getSymbol().getName()) {
-            case "Lt":
+        switch (opcodeOf(pred)) {
+            case Opcode.LT:
                 return evalLt(pred);
-            case "Eq":
+            case Opcode.EQ:
                 return evalEq(pred);
-            case "And":
+            case Opcode.AND:
                 return evalAnd(pred);
-            case "Or":
+            case Opcode.OR:
                 return evalOr(pred);
-            case "Not":
+            case Opcode.NOT:
                 return evalNot(pred);
             default:
                 throw new RuntimeException("Cannot evaluate predicate " + pred);
         }
     }
 
+    private static int opcodeOf(ASTNode node) {
+        return node.getSymbol().isTerminal() ? ((Terminal) node.getSymbol()).getOpcode() : Opcode.UNKNOWN;
+    }
+
     public int evalIte(ASTNode ite) {
         if (evalPred(ite.getChild(0))) {
             return evalExpr(ite.getChild(1));
@@ -89,6 +98,18 @@ public class Interpreter {
         return evalExpr(multiply.getChild(0)) * evalExpr(multiply.getChild(1));
     }
 
+    public int evalSubtract(ASTNode subtract) {
+        return evalExpr(subtract.getChild(0)) - evalExpr(subtract.getChild(1));
+    }
+
+    public int evalMin(ASTNode min) {
+        return Math.min(evalExpr(min.getChild(0)), evalExpr(min.getChild(1)));
+    }
+
+    public int evalMax(ASTNode max) {
+        return Math.max(evalExpr(max.getChild(0)), evalExpr(max.getChild(1)));
+    }
+
     public int evalVar(ASTNode v) {
         return environment.get(v.getSymbol().getName());
     }
@@ -106,11 +127,11 @@ public class Interpreter {
     }
 
     public boolean evalAnd(ASTNode and) {
-        return evalPred(and.getChild(0)) || evalPred(and.getChild(1));
+        return evalPred(and.getChild(0)) && evalPred(and.getChild(1));
     }
 
     public boolean evalOr(ASTNode or) {
-        return evalPred(or.getChild(0)) && evalPred(or.getChild(1));
+        return evalPred(or.getChild(0)) || evalPred(or.getChild(1));
     }
 
     public boolean evalNot(ASTNode not) {
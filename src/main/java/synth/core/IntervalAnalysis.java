@@ -0,0 +1,266 @@
+package synth.core;
+
+import synth.cfg.CFG;
+import synth.cfg.NonTerminal;
+import synth.cfg.Opcode;
+import synth.cfg.Production;
+import synth.cfg.Symbol;
+import synth.cfg.Terminal;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Abstract interpretation of partial programs over intervals, one per example. A hole evaluates to an interval
+ * containing every value its nonterminal can derive on the example, computed once from the grammar by fixpoint
+ * iteration with widening and found by the id of a {@link HoleNode}, and predicates evaluate to true, false or
+ * unknown. A partial program whose interval
+ * misses the output of some example cannot be completed into a solution.
+ * <p>
+ * Like the interpreter, arithmetic wraps around on 32 bits: bounds are ints, and an interval that leaves the int range
+ * may wrap to any int, so it becomes the whole range.
+ */
+final class IntervalAnalysis {
+    private static final long INT_MIN = Integer.MIN_VALUE;
+    private static final long INT_MAX = Integer.MAX_VALUE;
+    private static final byte FALSE = 0;
+    private static final byte TRUE = 1;
+    private static final byte UNKNOWN = 2;
+    /**
+     * rounds of the fixpoint iteration before a growing bound is widened to the end of the int range
+     */
+    private static final int WIDENING_DELAY = 2;
+
+    private final CFG cfg;
+    private final ExampleTable table;
+    /**
+     * holeLows[id][i] and holeHighs[id][i] bound the values derived from the nonterminal with that id on example i
+     */
+    private final long[][] holeLows;
+    private final long[][] holeHighs;
+
+    IntervalAnalysis(CFG cfg, ExampleTable table) {
+        this.cfg = cfg;
+        this.table = table;
+        int count = cfg.getNonTerminalCount();
+        this.holeLows = new long[count][table.size()];
+        this.holeHighs = new long[count][table.size()];
+        for (int id = 0; id < count; ++id) {
+            // empty until a production reaches the nonterminal
+            Arrays.fill(this.holeLows[id], INT_MAX);
+            Arrays.fill(this.holeHighs[id], INT_MIN);
+        }
+        boolean changed = true;
+        for (int round = 0; changed; ++round) {
+            changed = false;
+            for (int id = 0; id < count; ++id) {
+                for (Production prod : cfg.getProductions(id)) {
+                    if (Opcode.isPredicate(prod.getOperator().getOpcode())) {
+                        continue;
+                    }
+                    long[][] value = evalProduction(prod);
+                    changed |= join(id, value[0], value[1], round >= WIDENING_DELAY);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether some completion of the partial program may evaluate to the output on every example
+     */
+    boolean mayReach(ASTNode partial) {
+        long[][] value = evalExpr(partial);
+        int[] outputs = this.table.getOutputs();
+        for (int i = 0; i < outputs.length; ++i) {
+            if (outputs[i] < value[0][i] || outputs[i] > value[1][i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the bounds of nonterminal id changed
+     */
+    private boolean join(int id, long[] lows, long[] highs, boolean widen) {
+        boolean changed = false;
+        for (int i = 0; i < lows.length; ++i) {
+            if (lows[i] < this.holeLows[id][i]) {
+                this.holeLows[id][i] = widen && this.holeLows[id][i] != INT_MAX ? INT_MIN : lows[i];
+                changed = true;
+            }
+            if (highs[i] > this.holeHighs[id][i]) {
+                this.holeHighs[id][i] = widen && this.holeHighs[id][i] != INT_MIN ? INT_MAX : highs[i];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private long[][] evalProduction(Production prod) {
+        List<Symbol> args = prod.getArgumentSymbols();
+        ASTNode[] children = new ASTNode[args.size()];
+        for (int k = 0; k < children.length; ++k) {
+            Symbol arg = args.get(k);
+            children[k] = arg.isNonTerminal() ? new HoleNode((NonTerminal) arg, this.cfg.getId(arg))
+                    : new ASTNode(arg, List.of());
+        }
+        return evalExpr(new ASTNode(prod.getOperator(), List.of(children)));
+    }
+
+    /**
+     * @return the lower and upper bounds of the node on every example
+     */
+    private long[][] evalExpr(ASTNode node) {
+        int size = this.table.size();
+        Symbol symbol = node.getSymbol();
+        if (symbol.isNonTerminal()) {
+            int id = node instanceof HoleNode ? ((HoleNode) node).getId() : this.cfg.getId(symbol);
+            return new long[][]{this.holeLows[id], this.holeHighs[id]};
+        }
+        long[] lows = new long[size];
+        long[] highs = new long[size];
+        switch (((Terminal) symbol).getOpcode()) {
+            case Opcode.VAR: {
+                int[] column = this.table.getColumn(Opcode.slotOf(symbol.getName()));
+                for (int i = 0; i < size; ++i) {
+                    lows[i] = column[i];
+                    highs[i] = column[i];
+                }
+                break;
+            }
+            case Opcode.CONST:
+                Arrays.fill(lows, Integer.parseInt(symbol.getName()));
+                Arrays.fill(highs, Integer.parseInt(symbol.getName()));
+                break;
+            case Opcode.ADD:
+            case Opcode.SUBTRACT:
+            case Opcode.MULTIPLY:
+            case Opcode.MIN:
+            case Opcode.MAX: {
+                int opcode = ((Terminal) symbol).getOpcode();
+                long[][] a = evalExpr(node.getChild(0));
+                long[][] b = evalExpr(node.getChild(1));
+                for (int i = 0; i < size; ++i) {
+                    if (a[0][i] > a[1][i] || b[0][i] > b[1][i]) {
+                        // an argument derives nothing yet
+                        lows[i] = INT_MAX;
+                        highs[i] = INT_MIN;
+                        continue;
+                    }
+                    switch (opcode) {
+                        case Opcode.ADD:
+                            lows[i] = a[0][i] + b[0][i];
+                            highs[i] = a[1][i] + b[1][i];
+                            break;
+                        case Opcode.SUBTRACT:
+                            lows[i] = a[0][i] - b[1][i];
+                            highs[i] = a[1][i] - b[0][i];
+                            break;
+                        case Opcode.MULTIPLY: {
+                            long p1 = a[0][i] * b[0][i];
+                            long p2 = a[0][i] * b[1][i];
+                            long p3 = a[1][i] * b[0][i];
+                            long p4 = a[1][i] * b[1][i];
+                            lows[i] = Math.min(Math.min(p1, p2), Math.min(p3, p4));
+                            highs[i] = Math.max(Math.max(p1, p2), Math.max(p3, p4));
+                            break;
+                        }
+                        case Opcode.MIN:
+                            lows[i] = Math.min(a[0][i], b[0][i]);
+                            highs[i] = Math.min(a[1][i], b[1][i]);
+                            break;
+                        default:
+                            lows[i] = Math.max(a[0][i], b[0][i]);
+                            highs[i] = Math.max(a[1][i], b[1][i]);
+                            break;
+                    }
+                    if (lows[i] < INT_MIN || highs[i] > INT_MAX) {
+                        // the result may have wrapped around
+                        lows[i] = INT_MIN;
+                        highs[i] = INT_MAX;
+                    }
+                }
+                break;
+            }
+            case Opcode.ITE: {
+                byte[] cond = evalPred(node.getChild(0));
+                long[][] a = evalExpr(node.getChild(1));
+                long[][] b = evalExpr(node.getChild(2));
+                for (int i = 0; i < size; ++i) {
+                    if (cond[i] == TRUE) {
+                        lows[i] = a[0][i];
+                        highs[i] = a[1][i];
+                    } else if (cond[i] == FALSE) {
+                        lows[i] = b[0][i];
+                        highs[i] = b[1][i];
+                    } else {
+                        lows[i] = Math.min(a[0][i], b[0][i]);
+                        highs[i] = Math.max(a[1][i], b[1][i]);
+                    }
+                }
+                break;
+            }
+            default:
+                throw new RuntimeException("Cannot evaluate expression " + node);
+        }
+        return new long[][]{lows, highs};
+    }
+
+    /**
+     * @return TRUE, FALSE or UNKNOWN on every example
+     */
+    private byte[] evalPred(ASTNode node) {
+        int size = this.table.size();
+        byte[] result = new byte[size];
+        Symbol symbol = node.getSymbol();
+        if (symbol.isNonTerminal()) {
+            Arrays.fill(result, UNKNOWN);
+            return result;
+        }
+        int opcode = ((Terminal) symbol).getOpcode();
+        switch (opcode) {
+            case Opcode.LT:
+            case Opcode.EQ: {
+                long[][] a = evalExpr(node.getChild(0));
+                long[][] b = evalExpr(node.getChild(1));
+                for (int i = 0; i < size; ++i) {
+                    if (opcode == Opcode.LT) {
+                        result[i] = a[1][i] < b[0][i] ? TRUE : a[0][i] >= b[1][i] ? FALSE : UNKNOWN;
+                    } else if (a[1][i] < b[0][i] || b[1][i] < a[0][i]) {
+                        result[i] = FALSE;
+                    } else {
+                        result[i] = a[0][i] == a[1][i] && b[0][i] == b[1][i] ? TRUE : UNKNOWN;
+                    }
+                }
+                return result;
+            }
+            case Opcode.AND:
+            case Opcode.OR: {
+                byte[] a = evalPred(node.getChild(0));
+                byte[] b = evalPred(node.getChild(1));
+                // the value deciding the operator alone: false for And, true for Or
+                byte decisive = opcode == Opcode.AND ? FALSE : TRUE;
+                for (int i = 0; i < size; ++i) {
+                    if (a[i] == decisive || b[i] == decisive) {
+                        result[i] = decisive;
+                    } else if (a[i] == UNKNOWN || b[i] == UNKNOWN) {
+                        result[i] = UNKNOWN;
+                    } else {
+                        result[i] = a[i];
+                    }
+                }
+                return result;
+            }
+            case Opcode.NOT: {
+                byte[] a = evalPred(node.getChild(0));
+                for (int i = 0; i < size; ++i) {
+                    result[i] = a[i] == UNKNOWN ? UNKNOWN : a[i] == TRUE ? FALSE : TRUE;
+                }
+                return result;
+            }
+            default:
+                throw new RuntimeException("Cannot evaluate predicate " + node);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package synth.core;
+
+import synth.cfg.NonTerminal;
+import synth.cfg.Symbol;
+import synth.cfg.Terminal;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hash-consing builder of ASTs: structurally equal subtrees built by the same factory are the same object, so the
+ * programs of one synthesis run form a DAG, and equal programs are equal references. A node keeps the symbol object
+ * of the first equal node built, normally the one of the grammar, which carries the opcode of the symbol.
+ * Symbols built from a name alone are interned once for all factories. Thread-safe.
+ */
+public final class NodeFactory {
+    private static final Map<String, Terminal> TERMINALS = new ConcurrentHashMap<>();
+    private static final Map<String, NonTerminal> NON_TERMINALS = new ConcurrentHashMap<>();
+
+    /**
+     * canonical node of every distinct tree built so far
+     */
+    private final Map<ASTNode, ASTNode> nodes = new ConcurrentHashMap<>();
+
+    public static Terminal terminal(String name) {
+        return TERMINALS.computeIfAbsent(name, Terminal::new);
+    }
+
+    public static NonTerminal nonTerminal(String name) {
+        return NON_TERMINALS.computeIfAbsent(name, NonTerminal::new);
+    }
+
+    /**
+     * @return the canonical node symbol(children)
+     */
+    public ASTNode node(Symbol symbol, List<ASTNode> children) {
+        ASTNode[] canonical = new ASTNode[children.size()];
+        for (int k = 0; k < canonical.length; ++k) {
+            canonical[k] = intern(children.get(k));
+        }
+        return share(new ASTNode(symbol, List.of(canonical)));
+    }
+
+    public ASTNode node(Symbol symbol, ASTNode... children) {
+        return node(symbol, List.of(children));
+    }
+
+    public ASTNode leaf(Symbol symbol) {
+        return node(symbol, List.of());
+    }
+
+    /**
+     * @return the canonical node equal to node, which may have been built without this factory
+     */
+    public ASTNode intern(ASTNode node) {
+        ASTNode existing = this.nodes.get(node);
+        if (existing != null) {
+            return existing;
+        }
+        return node(node.getSymbol(), node.getChildren());
+    }
+
+    /**
+     * @return number of distinct nodes built so far
+     */
+    public int size() {
+        return this.nodes.size();
+    }
+
+    private ASTNode share(ASTNode node) {
+        ASTNode existing = this.nodes.putIfAbsent(node, node);
+        return existing == null ? node : existing;
+    }
+}
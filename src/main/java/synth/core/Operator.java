@@ -0,0 +1,151 @@
+package synth.core;
+
+import synth.cfg.CFG;
+import synth.cfg.NonTerminal;
+import synth.cfg.Opcode;
+import synth.cfg.Production;
+import synth.cfg.Symbol;
+
+import java.util.List;
+
+/**
+ * A production of the grammar compiled for bottom-up enumeration: the opcode and the argument symbols are resolved
+ * once, so that the value vector of a new program is computed from the value vectors of its children with the
+ * kernels of {@link BatchEvaluator}, whatever the grammar.
+ */
+final class Operator {
+    private final Production production;
+    private final int opcode;
+    private final NonTerminal[] argSymbols;
+    /**
+     * argIds[k] is the id of argSymbols[k] in the grammar
+     */
+    private final int[] argIds;
+    private final NodeFactory nodes;
+
+    /**
+     * @param cfg   grammar of the production, which gives the ids of the argument symbols
+     * @param nodes factory of the programs built by the operator
+     */
+    Operator(Production production, CFG cfg, NodeFactory nodes) {
+        this.production = production;
+        this.nodes = nodes;
+        this.opcode = production.getOperator().getOpcode();
+        if (this.opcode == Opcode.UNKNOWN) {
+            throw new RuntimeException("Unsupported operator in production " + production);
+        }
+        List<Symbol> args = production.getArgumentSymbols();
+        this.argSymbols = new NonTerminal[args.size()];
+        this.argIds = new int[args.size()];
+        for (int k = 0; k < this.argSymbols.length; ++k) {
+            if (!args.get(k).isNonTerminal()) {
+                throw new RuntimeException("Terminal argument in production " + production);
+            }
+            this.argSymbols[k] = (NonTerminal) args.get(k);
+            this.argIds[k] = cfg.getId(this.argSymbols[k]);
+        }
+    }
+
+    public Production getProduction() {
+        return production;
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+
+    public int getArity() {
+        return argSymbols.length;
+    }
+
+    public NonTerminal getArgSymbol(int index) {
+        return argSymbols[index];
+    }
+
+    /**
+     * @return the id of the symbol of argument index in the grammar
+     */
+    public int getArgId(int index) {
+        return argIds[index];
+    }
+
+    /**
+     * @return whether Op(a, b) and Op(b, a) are programs of the same bank with the same value, so that only one of
+     * them needs to be enumerated
+     */
+    public boolean isSymmetric() {
+        return this.argSymbols.length == 2 && Opcode.isCommutative(this.opcode)
+                && this.argSymbols[0].equals(this.argSymbols[1]);
+    }
+
+    public ASTNode build(ASTNode... children) {
+        return this.nodes.node(this.production.getOperator(), children);
+    }
+
+    /**
+     * @param args value vectors of the children: int[] for integer arguments, bitsets for predicate arguments
+     * @param size number of examples
+     * @return the value vector of the program, in the same representation
+     */
+    public Object apply(Object[] args, int size) {
+        switch (this.opcode) {
+            case Opcode.ITE: {
+                int[] dst = new int[size];
+                BatchEvaluator.ite((long[]) args[0], (int[]) args[1], (int[]) args[2], dst);
+                return dst;
+            }
+            case Opcode.ADD: {
+                int[] dst = new int[size];
+                BatchEvaluator.add((int[]) args[0], (int[]) args[1], dst);
+                return dst;
+            }
+            case Opcode.MULTIPLY: {
+                int[] dst = new int[size];
+                BatchEvaluator.multiply((int[]) args[0], (int[]) args[1], dst);
+                return dst;
+            }
+            case Opcode.SUBTRACT: {
+                int[] dst = new int[size];
+                BatchEvaluator.subtract((int[]) args[0], (int[]) args[1], dst);
+                return dst;
+            }
+            case Opcode.MIN: {
+                int[] dst = new int[size];
+                BatchEvaluator.min((int[]) args[0], (int[]) args[1], dst);
+                return dst;
+            }
+            case Opcode.MAX: {
+                int[] dst = new int[size];
+                BatchEvaluator.max((int[]) args[0], (int[]) args[1], dst);
+                return dst;
+            }
+            case Opcode.LT: {
+                long[] dst = new long[Bits.words(size)];
+                BatchEvaluator.lt((int[]) args[0], (int[]) args[1], dst);
+                return dst;
+            }
+            case Opcode.EQ: {
+                long[] dst = new long[Bits.words(size)];
+                BatchEvaluator.eq((int[]) args[0], (int[]) args[1], dst);
+                return dst;
+            }
+            case Opcode.AND: {
+                long[] dst = new long[Bits.words(size)];
+                BatchEvaluator.and((long[]) args[0], (long[]) args[1], dst);
+                return dst;
+            }
+            case Opcode.OR: {
+                long[] dst = new long[Bits.words(size)];
+                BatchEvaluator.or((long[]) args[0], (long[]) args[1], dst);
+                return dst;
+            }
+            case Opcode.NOT: {
+                long[] dst = new long[Bits.words(size)];
+                BatchEvaluator.not((long[]) args[0], size, dst);
+                return dst;
+            }
+            default:
+                throw new RuntimeException("Cannot enumerate production " + this.production);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package synth.core;
+
+import java.util.Arrays;
+
+/**
+ * Partition of the space of index pairs (i, j) with i < rows and j < columns (and i <= j if triangular) into blocks
+ * of consecutive rows holding about the same number of pairs. Pairs with i < oldRows and j < oldColumns were
+ * processed in an earlier round and are skipped, matching the frontiers of the operators in
+ * {@link DivAndConSynthesizer}.
+ */
+final class PairBlocks {
+
+    interface PairVisitor {
+        /**
+         * @return whether to stop visiting the block
+         */
+        boolean visit(int i, int j);
+    }
+
+    private final int columns;
+    private final int oldRows;
+    private final int oldColumns;
+    private final boolean triangular;
+    /**
+     * block b covers the rows [rowStarts[b], rowStarts[b + 1])
+     */
+    private final int[] rowStarts;
+
+    /**
+     * @param rows       number of entries of the bank of the first argument
+     * @param columns    number of entries of the bank of the second argument
+     * @param seen       {rows, columns} already processed in earlier rounds
+     * @param triangular whether to visit i <= j only, for commutative operators over a single bank
+     * @param blockCount desired number of blocks
+     */
+    PairBlocks(int rows, int columns, int[] seen, boolean triangular, int blockCount) {
+        this.columns = columns;
+        this.oldRows = seen[0];
+        this.oldColumns = seen[1];
+        this.triangular = triangular;
+        long total = 0;
+        for (int i = 0; i < rows; ++i) {
+            total += pairsInRow(i);
+        }
+        long perBlock = Math.max(1, (total + blockCount - 1) / blockCount);
+        int[] starts = new int[Math.max(1, blockCount) + 1];
+        int count = 0;
+        long inBlock = 0;
+        for (int i = 0; i < rows; ++i) {
+            long pairs = pairsInRow(i);
+            if (pairs == 0) {
+                continue;
+            }
+            if (inBlock == 0) {
+                starts[count++] = i;
+            }
+            inBlock += pairs;
+            if (inBlock >= perBlock && count < starts.length - 1) {
+                inBlock = 0;
+            }
+        }
+        starts[count] = rows;
+        this.rowStarts = Arrays.copyOf(starts, count + 1);
+    }
+
+    int count() {
+        return this.rowStarts.length - 1;
+    }
+
+    void visit(int block, PairVisitor visitor) {
+        for (int i = this.rowStarts[block]; i < this.rowStarts[block + 1]; ++i) {
+            for (int j = firstColumn(i); j < this.columns; ++j) {
+                if (visitor.visit(i, j)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private int firstColumn(int row) {
+        int first = this.triangular ? row : 0;
+        if (row < this.oldRows) {
+            first = Math.max(first, this.oldColumns);
+        }
+        return first;
+    }
+
+    private long pairsInRow(int row) {
+        return Math.max(0, this.columns - firstColumn(row));
+    }
+}
@@ -0,0 +1,146 @@
+package synth.core;
+
+import synth.cfg.CFG;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several synthesizers on the same problem, each on its own thread, and returns the first program that satisfies
+ * the examples, or the first proof that none does. The other synthesizers are then cancelled by interrupting their
+ * threads, which they check with their {@link Budget} between steps of their search; a synthesizer that fails, throws
+ * or returns a wrong program leaves the race to the others.
+ */
+public class PortfolioSynthesizer implements ISynthesizer {
+    private final List<ISynthesizer> synthesizers;
+
+    /**
+     * @param synthesizers distinct instances, as synthesizers keep the state of their run
+     */
+    public PortfolioSynthesizer(List<ISynthesizer> synthesizers) {
+        if (synthesizers.isEmpty()) {
+            throw new RuntimeException("No synthesizer in the portfolio");
+        }
+        this.synthesizers = List.copyOf(synthesizers);
+    }
+
+    public PortfolioSynthesizer(ISynthesizer... synthesizers) {
+        this(List.of(synthesizers));
+    }
+
+    /**
+     * @return the first verified program, or null if the problem is infeasible, every synthesizer failed or the
+     * calling thread was interrupted
+     */
+    @Override
+    public Program synthesize(CFG cfg, List<Example> examples) {
+        SynthesisResult result = synthesize(cfg, examples, Budget.unlimited());
+        return result.isSolved() ? result.getProgram() : null;
+    }
+
+    /**
+     * Every synthesizer runs under the same budget. An INFEASIBLE result is a proof that no program exists, so it is
+     * returned at once like a solution. If no synthesizer settles the problem, the status is the first of
+     * CANCELLED, TIMED_OUT, OUT_OF_MEMORY and EXHAUSTED that one of them reported, and the program is the partial
+     * solution satisfying the most examples.
+     */
+    @Override
+    public SynthesisResult synthesize(CFG cfg, List<Example> examples, Budget budget) {
+        // daemon threads, so that a synthesizer ignoring the interruption does not keep the process alive
+        ExecutorService executor = Executors.newFixedThreadPool(this.synthesizers.size(), runnable -> {
+            Thread thread = new Thread(runnable, "portfolio");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<SynthesisResult> race = new ExecutorCompletionService<>(executor);
+        List<Future<SynthesisResult>> futures = new ArrayList<>();
+        List<SynthesisResult> failures = new ArrayList<>();
+        try {
+            for (ISynthesizer synthesizer : this.synthesizers) {
+                futures.add(race.submit(() -> synthesizer.synthesize(cfg, examples, budget)));
+            }
+            for (int i = 0; i < futures.size(); ++i) {
+                try {
+                    SynthesisResult result = race.take().get();
+                    if (result.isSolved() && satisfied(result.getProgram(), examples) == examples.size()
+                            || result.getStatus() == SynthesisResult.Status.INFEASIBLE) {
+                        return result;
+                    }
+                    failures.add(result);
+                } catch (ExecutionException e) {
+                    // a failing synthesizer does not stop the others
+                }
+            }
+            return merge(failures, examples);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures.add(new SynthesisResult(SynthesisResult.Status.CANCELLED, null));
+            return merge(failures, examples);
+        } finally {
+            for (Future<SynthesisResult> future : futures) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private static SynthesisResult merge(List<SynthesisResult> failures, List<Example> examples) {
+        SynthesisResult.Status status = SynthesisResult.Status.EXHAUSTED;
+        Program best = null;
+        int bestCount = -1;
+        for (SynthesisResult result : failures) {
+            if (severity(result.getStatus()) > severity(status)) {
+                status = result.getStatus();
+            }
+            if (result.getProgram() != null) {
+                int count = satisfied(result.getProgram(), examples);
+                if (count > bestCount) {
+                    best = result.getProgram();
+                    bestCount = count;
+                }
+            }
+        }
+        return new SynthesisResult(status, best);
+    }
+
+    /**
+     * @return rank of a failure status, a wrong solution counting as EXHAUSTED
+     */
+    private static int severity(SynthesisResult.Status status) {
+        switch (status) {
+            case INFEASIBLE:
+                return 4;
+            case CANCELLED:
+                return 3;
+            case TIMED_OUT:
+                return 2;
+            case OUT_OF_MEMORY:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return the number of examples the program satisfies
+     */
+    private static int satisfied(Program program, List<Example> examples) {
+        int count = 0;
+        for (Example example : examples) {
+            try {
+                if (Interpreter.evaluate(program, example.getInput()) == example.getOutput()) {
+                    ++count;
+                }
+            } catch (RuntimeException e) {
+                // a program the interpreter cannot run satisfies no example
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,188 @@
+package synth.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a predicate holding on exactly a requested set of examples out of the predicates of a bank, instead of
+ * enumerating every And/Or of bank predicates up front. Only the predicates that can take part in the result are
+ * considered: a conjunction is made of predicates holding on a superset of the target, and a disjunction is made of
+ * conjunctions holding on a subset of it.
+ */
+final class PredicateSearch {
+    /**
+     * default limit of predicates joined by one And
+     */
+    static final int MAX_CONJUNCTS = 3;
+    /**
+     * default limit of conjunctions joined by the Or of a disjunctive normal form
+     */
+    static final int MAX_DISJUNCTS = 3;
+
+    /**
+     * number of examples
+     */
+    private final int size;
+    private final List<ASTNode> preds;
+    /**
+     * predValues.get(i) is the bitset of examples on which preds.get(i) holds
+     */
+    private final List<long[]> predValues;
+    private final int maxConjuncts;
+    private final int maxDisjuncts;
+    private final NodeFactory nodes;
+
+    /**
+     * @param maxConjuncts most predicates joined by one And, 1 if the grammar has no And
+     * @param maxDisjuncts most conjunctions joined by one Or, 1 if the grammar has no Or
+     * @param nodes        factory of the built predicates
+     */
+    PredicateSearch(int size, List<ASTNode> preds, List<long[]> predValues, int maxConjuncts, int maxDisjuncts,
+                    NodeFactory nodes) {
+        this.size = size;
+        this.preds = preds;
+        this.predValues = predValues;
+        this.maxConjuncts = maxConjuncts;
+        this.maxDisjuncts = maxDisjuncts;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Look for a conjunction of bank predicates first, then for a disjunction of such conjunctions, each picked
+     * greedily.
+     *
+     * @param target bitset of examples on which the predicate must hold
+     * @return a predicate holding exactly on target, or null if none was found within the size limits
+     */
+    ASTNode find(long[] target) {
+        List<Integer> conjuncts = conjoin(target, target);
+        if (conjuncts != null) {
+            return join("And", conjuncts);
+        }
+        long[] uncovered = target.clone();
+        List<ASTNode> disjuncts = new ArrayList<>();
+        while (Bits.count(uncovered) > 0) {
+            if (disjuncts.size() == this.maxDisjuncts) {
+                return null;
+            }
+            // the conjunction must keep the first uncovered example, and should keep as many others as it can
+            long[] first = new long[target.length];
+            Bits.set(first, firstSetBit(uncovered));
+            List<Integer> term = conjoin(target, first);
+            if (term == null) {
+                return null;
+            }
+            long[] covered = conjunction(term);
+            for (int w = 0; w < uncovered.length; ++w) {
+                uncovered[w] &= ~covered[w];
+            }
+            disjuncts.add(join("And", term));
+        }
+        ASTNode result = disjuncts.get(0);
+        for (int i = 1; i < disjuncts.size(); ++i) {
+            result = this.nodes.node(NodeFactory.terminal("Or"), result, disjuncts.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Greedily pick predicates holding on every example of required whose conjunction holds on no example outside
+     * target, at each step the one ruling out the most examples outside target, keeping the most examples of target
+     * on ties.
+     *
+     * @return indices of the picked predicates, or null if no such conjunction was found
+     */
+    private List<Integer> conjoin(long[] target, long[] required) {
+        long[] current = Bits.full(this.size);
+        List<Integer> picked = new ArrayList<>();
+        int falsePositives = countMinus(current, target);
+        while (falsePositives > 0) {
+            if (picked.size() == this.maxConjuncts) {
+                return null;
+            }
+            int best = -1;
+            int bestFalsePositives = falsePositives;
+            int bestKept = -1;
+            for (int p = 0; p < this.predValues.size(); ++p) {
+                long[] bits = this.predValues.get(p);
+                if (!contains(bits, required)) {
+                    continue;
+                }
+                int pFalsePositives = 0;
+                int kept = 0;
+                for (int w = 0; w < current.length; ++w) {
+                    long next = current[w] & bits[w];
+                    pFalsePositives += Long.bitCount(next & ~target[w]);
+                    kept += Long.bitCount(next & target[w]);
+                }
+                if (pFalsePositives < bestFalsePositives
+                        || (pFalsePositives == bestFalsePositives && best >= 0 && kept > bestKept)) {
+                    best = p;
+                    bestFalsePositives = pFalsePositives;
+                    bestKept = kept;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            long[] bits = this.predValues.get(best);
+            for (int w = 0; w < current.length; ++w) {
+                current[w] &= bits[w];
+            }
+            picked.add(best);
+            falsePositives = bestFalsePositives;
+        }
+        return picked.isEmpty() ? null : picked;
+    }
+
+    private long[] conjunction(List<Integer> picked) {
+        long[] result = Bits.full(this.size);
+        for (int p : picked) {
+            long[] bits = this.predValues.get(p);
+            for (int w = 0; w < result.length; ++w) {
+                result[w] &= bits[w];
+            }
+        }
+        return result;
+    }
+
+    private ASTNode join(String op, List<Integer> picked) {
+        ASTNode result = this.preds.get(picked.get(0));
+        for (int i = 1; i < picked.size(); ++i) {
+            result = this.nodes.node(NodeFactory.terminal(op), result, this.preds.get(picked.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * @return whether every example of subset is in bits
+     */
+    private static boolean contains(long[] bits, long[] subset) {
+        for (int w = 0; w < bits.length; ++w) {
+            if ((subset[w] & ~bits[w]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of examples in bits but not in other
+     */
+    private static int countMinus(long[] bits, long[] other) {
+        int count = 0;
+        for (int w = 0; w < bits.length; ++w) {
+            count += Long.bitCount(bits[w] & ~other[w]);
+        }
+        return count;
+    }
+
+    private static int firstSetBit(long[] bits) {
+        for (int w = 0; w < bits.length; ++w) {
+            if (bits[w] != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(bits[w]);
+            }
+        }
+        return -1;
+    }
+}
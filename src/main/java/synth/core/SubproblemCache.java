@@ -0,0 +1,82 @@
+package synth.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+/**
+ * Results of the sub-problems solved during one divide-and-conquer synthesis, keyed by the subset of examples of the
+ * sub-problem as a bitset over the examples of the top-level problem. A sub-problem is either solved, or known to
+ * fail within its round budget when attempted while the expression bank of the top-level problem had a given size;
+ * it is worth retrying only once that bank has grown past this size, as the banks of every sub-problem start from
+ * projections of it. The top-level bank is the one measure shared by the sub-problems of every nesting depth.
+ */
+final class SubproblemCache {
+    private final List<long[]> keys = new ArrayList<>();
+    private final List<Program> programs = new ArrayList<>();
+    /**
+     * size of the top-level expression bank at the last failed attempt, -1 once solved
+     */
+    private final List<Integer> failedBankSizes = new ArrayList<>();
+    private final IntSupplier rootBankSize;
+    private final VectorTable<long[]> index = new VectorTable<>(new VectorTable.Keys<>() {
+        @Override
+        public int hash(long[] key) {
+            return VectorTable.hash(key);
+        }
+
+        @Override
+        public boolean matches(long[] key, int id) {
+            return Arrays.equals(key, keys.get(id));
+        }
+    });
+
+    /**
+     * @param rootBankSize current size of the expression bank of the top-level problem
+     */
+    SubproblemCache(IntSupplier rootBankSize) {
+        this.rootBankSize = rootBankSize;
+    }
+
+    /**
+     * @return the program solving the sub-problem, or null if it has not been solved
+     */
+    Program getSolution(long[] subset) {
+        int id = this.index.get(subset);
+        return id < 0 ? null : this.programs.get(id);
+    }
+
+    /**
+     * @return whether an attempt already failed with the top-level bank as large as it is now
+     */
+    boolean isKnownFailure(long[] subset) {
+        int id = this.index.get(subset);
+        return id >= 0 && this.programs.get(id) == null
+                && this.failedBankSizes.get(id) >= this.rootBankSize.getAsInt();
+    }
+
+    void putSolution(long[] subset, Program program) {
+        int id = idOf(subset);
+        this.programs.set(id, program);
+        this.failedBankSizes.set(id, -1);
+    }
+
+    void putFailure(long[] subset) {
+        int id = idOf(subset);
+        if (this.programs.get(id) == null) {
+            this.failedBankSizes.set(id, Math.max(this.rootBankSize.getAsInt(), this.failedBankSizes.get(id)));
+        }
+    }
+
+    private int idOf(long[] subset) {
+        int id = this.index.putIfAbsent(subset, this.keys.size());
+        if (id >= 0) {
+            return id;
+        }
+        this.keys.add(subset);
+        this.programs.add(null);
+        this.failedBankSizes.add(-1);
+        return this.keys.size() - 1;
+    }
+}
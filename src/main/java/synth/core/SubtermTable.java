@@ -0,0 +1,261 @@
+package synth.core;
+
+import synth.cfg.CFG;
+import synth.cfg.GrammarAnalysis;
+import synth.cfg.Opcode;
+import synth.cfg.Production;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Observational equivalence for top-down search: the cheapest complete subterm found so far for every value vector of
+ * every nonterminal. A subterm that is equivalent to a known one of lower cost, or of equal cost and first in a fixed
+ * order of the trees, is redundant, as replacing it by the known one never changes the outputs nor raises the cost of
+ * the program.
+ * Integer nonterminals compare output vectors, predicate nonterminals bitsets of the examples they hold on.
+ * <p>
+ * When the search is bounded in size, a cheaper subterm may be larger, so that replacing it would push a program over
+ * the bound: a subterm is then only redundant if a known one is also no larger, and a class keeps every subterm
+ * that no other one beats on both cost and size.
+ * <p>
+ * Subterms may be offered from several threads.
+ */
+final class SubtermTable {
+    /**
+     * the tables are sized for the programs up to this size
+     */
+    private static final int PRESIZE_SIZE = 4;
+    private static final int MAX_PRESIZE = 1 << 16;
+
+    private final ExampleTable table;
+    private final CostModel costModel;
+    /**
+     * whether sizes are compared along with costs
+     */
+    private final boolean bySize;
+    /**
+     * classes of the subterms of every nonterminal by id
+     */
+    private final List<Classes<?>> classes = new ArrayList<>();
+    /**
+     * number of subterms kept over all nonterminals
+     */
+    private final AtomicInteger size = new AtomicInteger();
+    /**
+     * whether only the subterms of earlier generations decide, see {@link #nextGeneration()}
+     */
+    private volatile boolean frozen;
+    private volatile int generation;
+
+    /**
+     * A canonical subterm of a class.
+     */
+    private static final class Candidate {
+        final DerivedNode subterm;
+        final long cost;
+        /**
+         * generation in which it was found
+         */
+        final int generation;
+
+        Candidate(DerivedNode subterm, long cost, int generation) {
+            this.subterm = subterm;
+            this.cost = cost;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Subterms of one nonterminal by value vector.
+     */
+    private final class Classes<V> {
+        final List<V> values = new ArrayList<>();
+        /**
+         * canonical subterms of every class
+         */
+        final List<List<Candidate>> candidates = new ArrayList<>();
+        final VectorTable<V> index;
+
+        Classes(ToIntFunction<V> hash, BiPredicate<V, V> equal, int expectedSize) {
+            this.index = new VectorTable<>(new VectorTable.Keys<>() {
+                @Override
+                public int hash(V key) {
+                    return hash.applyAsInt(key);
+                }
+
+                @Override
+                public boolean matches(V key, int id) {
+                    return equal.test(key, Classes.this.values.get(id));
+                }
+            }, expectedSize);
+        }
+
+        /**
+         * @return whether subterm is a canonical subterm of its class, recording it if no known one beats it
+         */
+        synchronized boolean offer(DerivedNode subterm, V values, long cost) {
+            int id = this.index.putIfAbsent(values, this.values.size());
+            Candidate offered = new Candidate(subterm, cost, SubtermTable.this.generation);
+            if (id < 0) {
+                this.values.add(values);
+                this.candidates.add(new ArrayList<>(List.of(offered)));
+                SubtermTable.this.size.incrementAndGet();
+                return true;
+            }
+            List<Candidate> candidates = this.candidates.get(id);
+            boolean known = false;
+            for (Candidate candidate : candidates) {
+                if (candidate.subterm.equals(subterm)) {
+                    known = true;
+                } else if (isVisible(candidate) && beats(candidate, offered)) {
+                    return false;
+                }
+            }
+            if (!known) {
+                // the candidates it beats are dropped once they no longer decide anything
+                int removed = 0;
+                for (int k = candidates.size() - 1; k >= 0; --k) {
+                    if (beats(offered, candidates.get(k)) && (!SubtermTable.this.frozen
+                            || candidates.get(k).generation == SubtermTable.this.generation)) {
+                        candidates.remove(k);
+                        ++removed;
+                    }
+                }
+                candidates.add(offered);
+                SubtermTable.this.size.addAndGet(1 - removed);
+            }
+            return true;
+        }
+
+        /**
+         * Drop the candidates beaten by another one, once every candidate is visible.
+         */
+        synchronized void compact() {
+            for (List<Candidate> candidates : this.candidates) {
+                int before = candidates.size();
+                candidates.removeIf(candidate -> candidates.stream()
+                        .anyMatch(other -> other != candidate && beats(other, candidate)));
+                SubtermTable.this.size.addAndGet(candidates.size() - before);
+            }
+        }
+    }
+
+    /**
+     * @param bySize whether the search is bounded in size, so that only subterms that are no larger are equivalent
+     */
+    SubtermTable(CFG cfg, ExampleTable table, CostModel costModel, GrammarAnalysis analysis, boolean bySize) {
+        this.table = table;
+        this.costModel = costModel;
+        this.bySize = bySize;
+        for (int id = 0; id < cfg.getNonTerminalCount(); ++id) {
+            boolean predicate = false;
+            for (Production prod : cfg.getProductions(id)) {
+                predicate |= Opcode.isPredicate(prod.getOperator().getOpcode());
+            }
+            long programs = 0;
+            for (long count : analysis.countPrograms(cfg.getNonTerminal(id), PRESIZE_SIZE)) {
+                programs = Math.min(programs + Math.min(count, MAX_PRESIZE), MAX_PRESIZE);
+            }
+            int expectedSize = (int) programs;
+            if (predicate) {
+                this.classes.add(new Classes<long[]>(VectorTable::hash, Arrays::equals, expectedSize));
+            } else {
+                this.classes.add(new Classes<int[]>(VectorTable::hash, Arrays::equals, expectedSize));
+            }
+        }
+    }
+
+    /**
+     * @return the number of canonical subterms kept over all nonterminals
+     */
+    int size() {
+        return this.size.get();
+    }
+
+    /**
+     * @param subterm complete subterm, derived from the return symbol of its production, whose id is the one of the
+     *                grammar of the table
+     * @return whether no known equivalent subterm of the nonterminal beats it
+     */
+    @SuppressWarnings("unchecked")
+    boolean isCanonical(DerivedNode subterm) {
+        Production prod = subterm.getProduction();
+        Classes<?> classes = this.classes.get(subterm.getId());
+        long cost = cost(subterm);
+        CompiledNode compiled = CompiledNode.compile(subterm);
+        if (Opcode.isPredicate(prod.getOperator().getOpcode())) {
+            return ((Classes<long[]>) classes).offer(subterm, BatchEvaluator.evalPred(compiled, this.table), cost);
+        }
+        return ((Classes<int[]>) classes).offer(subterm, BatchEvaluator.evalExpr(compiled, this.table), cost);
+    }
+
+    /**
+     * Start a new generation: from now on, only the subterms found before decide whether a subterm is canonical,
+     * and the ones found during the generation are recorded for the next ones. The decisions of a generation then
+     * do not depend on the order subterms are offered in, so that a search run by several threads prunes the same
+     * programs as a sequential one. Call it between the iterations of the search.
+     */
+    void nextGeneration() {
+        this.frozen = true;
+        this.generation++;
+        for (Classes<?> classes : this.classes) {
+            classes.compact();
+        }
+    }
+
+    private boolean isVisible(Candidate candidate) {
+        return !this.frozen || candidate.generation < this.generation;
+    }
+
+    /**
+     * @return whether the known candidate makes the other one redundant: it is not costlier, not larger if sizes are
+     * compared, and better on one of these or first in the order of {@link #compare}
+     */
+    private boolean beats(Candidate known, Candidate other) {
+        if (known.cost > other.cost) {
+            return false;
+        }
+        int size = known.subterm.size();
+        int otherSize = other.subterm.size();
+        if (this.bySize && size > otherSize) {
+            return false;
+        }
+        if (known.cost < other.cost || this.bySize && size < otherSize) {
+            return true;
+        }
+        return compare(known.subterm, other.subterm) < 0;
+    }
+
+    /**
+     * @return a total order of the trees: by size, then operator name, then children from left to right
+     */
+    private static int compare(ASTNode a, ASTNode b) {
+        if (a == b) {
+            return 0;
+        }
+        int order = Integer.compare(a.size(), b.size());
+        if (order == 0) {
+            order = a.getSymbol().getName().compareTo(b.getSymbol().getName());
+        }
+        for (int k = 0; order == 0 && k < a.getChildren().size(); ++k) {
+            order = compare(a.getChild(k), b.getChild(k));
+        }
+        return order;
+    }
+
+    /**
+     * @return the cost of a complete subterm under the cost model, a terminal argument counting as 1
+     */
+    private long cost(DerivedNode subterm) {
+        long cost = this.costModel.cost(subterm.getProduction());
+        for (ASTNode child : subterm.getChildren()) {
+            cost += child instanceof DerivedNode ? cost((DerivedNode) child) : 1;
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,67 @@
+package synth.core;
+
+/**
+ * Outcome of a synthesis run under a {@link Budget}: how it ended, and the program found, which for an unsolved run
+ * is the best partial solution, i.e. a program satisfying the most examples, or null if there is none.
+ */
+public final class SynthesisResult {
+
+    public enum Status {
+        /**
+         * the program satisfies all examples
+         */
+        SOLVED,
+        /**
+         * the deadline passed
+         */
+        TIMED_OUT,
+        /**
+         * no program of the grammar satisfies the examples, e.g. they contradict each other
+         */
+        INFEASIBLE,
+        /**
+         * the synthesizer searched its whole search space, e.g. bounded in size, without finding a program
+         */
+        EXHAUSTED,
+        /**
+         * the banks or worklist outgrew the budget, or the memory ran out
+         */
+        OUT_OF_MEMORY,
+        /**
+         * the token was cancelled or the thread interrupted
+         */
+        CANCELLED
+    }
+
+    private final Status status;
+    private final Program program;
+
+    public SynthesisResult(Status status, Program program) {
+        this.status = status;
+        this.program = program;
+    }
+
+    public static SynthesisResult solved(Program program) {
+        return new SynthesisResult(Status.SOLVED, program);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the solution if solved, otherwise the best partial solution or null
+     */
+    public Program getProgram() {
+        return program;
+    }
+
+    public boolean isSolved() {
+        return this.status == Status.SOLVED;
+    }
+
+    @Override
+    public String toString() {
+        return this.status + " " + this.program;
+    }
+}
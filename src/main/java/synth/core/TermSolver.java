@@ -0,0 +1,57 @@
+package synth.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Term solving step of divide-and-conquer synthesis: picks a small set of terms whose satisfied examples jointly cover
+ * all examples, to be combined by predicates afterwards (see {@link DecisionTreeUnifier}).
+ */
+public final class TermSolver {
+
+    private TermSolver() {
+    }
+
+    /**
+     * Greedy set cover: repeatedly pick the term satisfying the most examples not covered yet, the earliest one on
+     * ties (banks are ordered roughly by size, so this favours small terms).
+     *
+     * @param size number of examples
+     * @param sats sats.get(i) is the bitset of examples satisfied by term i
+     * @return indices of the chosen terms in the order they were picked, or null if the terms cannot cover all
+     * examples
+     */
+    public static List<Integer> greedyCover(int size, List<long[]> sats) {
+        long[] uncovered = Bits.full(size);
+        int uncoveredCount = size;
+        List<Integer> cover = new ArrayList<>();
+        while (uncoveredCount > 0) {
+            int best = -1;
+            int bestGain = 0;
+            for (int t = 0; t < sats.size(); ++t) {
+                long[] sat = sats.get(t);
+                int gain = 0;
+                for (int w = 0; w < uncovered.length; ++w) {
+                    gain += Long.bitCount(sat[w] & uncovered[w]);
+                }
+                if (gain > bestGain) {
+                    bestGain = gain;
+                    best = t;
+                    if (gain == uncoveredCount) {
+                        break;
+                    }
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            long[] sat = sats.get(best);
+            for (int w = 0; w < uncovered.length; ++w) {
+                uncovered[w] &= ~sat[w];
+            }
+            uncoveredCount -= bestGain;
+            cover.add(best);
+        }
+        return cover;
+    }
+}
@@ -1,17 +1,226 @@
 package synth.core;
 
 import synth.cfg.CFG;
+import synth.cfg.GrammarAnalysis;
 import synth.cfg.NonTerminal;
 import synth.cfg.Production;
-import synth.cfg.Terminal;
+import synth.cfg.Symbol;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
 import java.util.stream.Collectors;
 
 public class TopDownEnumSynthesizer implements ISynthesizer {
+    private static final int MAX_CAPACITY = 5000000;
+    /**
+     * queued tasks of a worker above which the parallel search runs expansions inline instead of forking them
+     */
+    private static final int SURPLUS_TASKS = 2;
+
+    /**
+     * columnar copy of the examples last passed to {@link #synthesize} or {@link #satisfy}
+     */
+    private ExampleTable table;
+    private List<Example> tableExamples;
+    /**
+     * factory of the partial programs of the run, which share their untouched subtrees
+     */
+    private NodeFactory nodes = new NodeFactory();
+    private final CostModel costModel;
+    private final Search search;
+    /**
+     * most partial programs held by the best-first worklist, or pending in the tasks of the parallel search
+     */
+    private final int capacity;
+    private final int parallelism;
+    /**
+     * largest size of the programs searched
+     */
+    private final int maxSize;
+    /**
+     * pool of the parallel search of the current run, null in sequential mode
+     */
+    private ForkJoinPool pool;
+
+    /*
+     * state of the current run
+     */
+    private List<Example> examples;
+    private int startId;
+    private int[] minCosts;
+    /**
+     * least size of the complete programs of every nonterminal, by id
+     */
+    private int[] minSizes;
+    private List<List<Expansion>> expansions;
+    private IntervalAnalysis intervals;
+    private SubtermTable subterms;
+    private Budget budget = Budget.unlimited();
+    /**
+     * why the current run stopped before finding a program
+     */
+    private AtomicReference<SynthesisResult.Status> stopped = new AtomicReference<>();
+    /**
+     * complete program of the current run satisfying the most examples, with that number
+     */
+    private ASTNode bestPartial;
+    private volatile int bestMatches;
+    /**
+     * least priority above the bound met by the current iteration of {@link #deepen}
+     */
+    private final LongAccumulator nextBound = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+    /**
+     * Order in which the partial programs are searched.
+     */
+    public enum Search {
+        /**
+         * A* over a worklist of partial programs, which is fastest but needs memory for the whole frontier; when the
+         * worklist is full the search goes on as ITERATIVE_DEEPENING
+         */
+        BEST_FIRST,
+        /**
+         * depth-first searches under an increasing priority bound, which revisit the cheap programs at every
+         * iteration but need memory only for the path to the current program
+         */
+        ITERATIVE_DEEPENING
+    }
+
+    /**
+     * A partial program of the worklist. Its priority is the cost of its productions plus the least cost of
+     * completing each of its holes, a lower bound of the cost of every program it expands to.
+     */
+    private static final class Entry {
+        final ASTNode ast;
+        final Holes holes;
+        final long priority;
+        /**
+         * least size of the programs it expands to
+         */
+        final long minSize;
+        /**
+         * insertion order, to break ties first in first out
+         */
+        final long seq;
+
+        Entry(ASTNode ast, Holes holes, long priority, long minSize, long seq) {
+            this.ast = ast;
+            this.holes = holes;
+            this.priority = priority;
+            this.minSize = minSize;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * A production as a step of the search: the node replacing a hole, and the cost and size it adds to the bounds
+     * of the partial program.
+     */
+    private static final class Expansion {
+        final ASTNode template;
+        /**
+         * ids of the nonterminal arguments of the production, which are the holes of the template in order
+         */
+        final int[] holeIds;
+        /**
+         * cost of the production plus the least costs of its arguments
+         */
+        final long cost;
+        /**
+         * least size of the programs starting with the production
+         */
+        final int minSize;
+
+        Expansion(ASTNode template, int[] holeIds, long cost, int minSize) {
+            this.template = template;
+            this.holeIds = holeIds;
+            this.cost = cost;
+            this.minSize = minSize;
+        }
+
+        /**
+         * @return the holes of a partial program once its first hole is filled by the template
+         */
+        Holes fill(Holes holes) {
+            Holes filled = holes.next;
+            for (int k = this.holeIds.length - 1; k >= 0; --k) {
+                filled = new Holes(this.holeIds[k], filled);
+            }
+            return filled;
+        }
+    }
+
+    /**
+     * Nonterminal ids of the holes of a partial program in preorder, the first one being the next to expand, so that
+     * the search does not walk the program to find it. The lists of the expansions of a program share their tail.
+     */
+    private static final class Holes {
+        final int id;
+        final Holes next;
+
+        Holes(int id, Holes next) {
+            this.id = id;
+            this.next = next;
+        }
+    }
+
+    public TopDownEnumSynthesizer() {
+        this(CostModel.SIZE);
+    }
+
+    /**
+     * @param costModel cost of the programs, which are searched by increasing cost
+     */
+    public TopDownEnumSynthesizer(CostModel costModel) {
+        this(costModel, Search.BEST_FIRST);
+    }
+
+    public TopDownEnumSynthesizer(CostModel costModel, Search search) {
+        this(costModel, search, MAX_CAPACITY);
+    }
+
+    /**
+     * @param costModel cost of the programs, which are searched by increasing cost
+     * @param search    order in which the partial programs are searched
+     * @param capacity  most partial programs held by the best-first worklist
+     */
+    public TopDownEnumSynthesizer(CostModel costModel, Search search, int capacity) {
+        this(costModel, search, capacity, 1);
+    }
 
     /**
-     * Synthesize a program f(x, y, z) based on a context-free grammar and examples
+     * @param parallelism number of worker threads of the iterative deepening. With more than one thread, the
+     *                    expansions are forked as tasks of a work-stealing fork/join pool, and once a program is
+     *                    found the workers only search the expansions that come before it in the sequential order,
+     *                    so that the program is the one the sequential search returns.
+     */
+    public TopDownEnumSynthesizer(CostModel costModel, Search search, int capacity, int parallelism) {
+        this(costModel, search, capacity, parallelism, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxSize largest size of the programs searched: expansions that cannot be completed within it are
+     *                skipped, and the search fails once no smaller program is left
+     */
+    public TopDownEnumSynthesizer(CostModel costModel, Search search, int capacity, int parallelism, int maxSize) {
+        this.costModel = costModel;
+        this.search = search;
+        this.capacity = capacity;
+        this.parallelism = parallelism;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Synthesize a program f(x, y, z) based on a context-free grammar and examples. The search is best-first (A*):
+     * the partial program of least priority is expanded first, and as priorities never overestimate, the first
+     * complete program satisfying the examples has the least cost. In {@link Search#BEST_FIRST} mode, once the
+     * worklist outgrows its capacity the search goes on by iterative deepening from the least priority left. The
+     * search gives up when the calling thread is interrupted.
      *
      * @param cfg      the context-free grammar
      * @param examples a list of examples
@@ -19,35 +228,411 @@ public class TopDownEnumSynthesizer implements ISynthesizer {
      */
     @Override
     public Program synthesize(CFG cfg, List<Example> examples) {
-        int MAX_CAPACITY = 5000000;
-        ASTNode start = new ASTNode(new NonTerminal("E"), Collections.emptyList());
-        Queue<ASTNode> workList = new ArrayDeque<>();
-        workList.offer(start);
-        while (!workList.isEmpty()) {
-            if (workList.size() > MAX_CAPACITY) {
-                return null;
+        SynthesisResult result = synthesize(cfg, examples, Budget.unlimited());
+        return result.isSolved() ? result.getProgram() : null;
+    }
+
+    /**
+     * Synthesize a program, checking the budget at every partial program. The entries of the budget are those of the
+     * worklist and of the table of canonical subterms, and the worklist falls back to iterative deepening when it
+     * would hold more entries than the budget allows. The best partial solution is the complete program checked that
+     * satisfies the most examples.
+     */
+    @Override
+    public SynthesisResult synthesize(CFG cfg, List<Example> examples, Budget budget) {
+        this.budget = budget;
+        this.stopped = new AtomicReference<>();
+        this.bestPartial = null;
+        this.bestMatches = -1;
+        try {
+            Program program = search(cfg, examples);
+            if (program != null) {
+                return SynthesisResult.solved(program);
+            }
+            SynthesisResult.Status status = this.stopped.get();
+            if (status == null) {
+                // the pruning is sound, so only a bound on the size leaves programs out
+                status = this.maxSize == Integer.MAX_VALUE ? SynthesisResult.Status.INFEASIBLE
+                        : SynthesisResult.Status.EXHAUSTED;
+            }
+            return new SynthesisResult(status,
+                    this.bestPartial == null ? null : new Program(this.bestPartial));
+        } catch (OutOfMemoryError e) {
+            // the search state is dropped with this synthesizer's fields
+            this.subterms = null;
+            return new SynthesisResult(SynthesisResult.Status.OUT_OF_MEMORY, null);
+        }
+    }
+
+    private Program search(CFG cfg, List<Example> examples) {
+        this.nodes = new NodeFactory();
+        this.examples = examples;
+        GrammarAnalysis analysis = new GrammarAnalysis(cfg);
+        this.minCosts = analysis.minCosts(this.costModel::cost);
+        this.minSizes = analysis.minCosts(production -> 1);
+        this.expansions = expansions(cfg, analysis);
+        this.intervals = new IntervalAnalysis(cfg, exampleTable(examples));
+        this.subterms = new SubtermTable(cfg, exampleTable(examples), this.costModel, analysis,
+                this.maxSize != Integer.MAX_VALUE);
+        NonTerminal startSymbol = cfg.getStartSymbol();
+        this.startId = cfg.getId(startSymbol);
+        if (!analysis.isProductive(startSymbol) || analysis.minSize(startSymbol) > this.maxSize) {
+            return null;
+        }
+        long capacity = Math.min(this.capacity, this.budget.getMaxEntries());
+        ASTNode root = new HoleNode(startSymbol, this.startId);
+        Holes rootHoles = new Holes(this.startId, null);
+        long bound = this.minCosts[this.startId];
+        if (this.search == Search.BEST_FIRST) {
+            // among equal priorities, fewer holes first as they are closer to a complete program
+            PriorityQueue<Entry> workList = new PriorityQueue<>(Comparator
+                    .comparingLong((Entry entry) -> entry.priority)
+                    .thenComparingInt(entry -> entry.ast.holes())
+                    .thenComparingLong(entry -> entry.seq));
+            long seq = 0;
+            workList.offer(new Entry(root, rootHoles, bound, this.minSizes[this.startId], seq++));
+            while (workList.size() <= capacity) {
+                Entry entry = workList.poll();
+                if (entry == null || outOfBudget(workList.size())) {
+                    return null;
+                }
+                ASTNode ast = entry.ast;
+                if (checkComplete(ast)) {
+                    if (check(ast)) {
+                        return new Program(ast);
+                    }
+                    continue;
+                }
+                int hole = entry.holes.id;
+                for (Expansion expansion : this.expansions.get(hole)) {
+                    long size = entry.minSize - this.minSizes[hole] + expansion.minSize;
+                    ASTNode expanded = expand(ast, expansion, size);
+                    if (expanded != null) {
+                        workList.offer(new Entry(expanded, expansion.fill(entry.holes),
+                                entry.priority - this.minCosts[hole] + expansion.cost, size, seq++));
+                    }
+                }
+            }
+            // every program of lower priority has been checked
+            bound = workList.peek().priority;
+        }
+        return deepen(root, rootHoles, bound);
+    }
+
+    /**
+     * Iterative deepening (IDA*): depth-first searches of the programs of priority up to a bound, raised after every
+     * iteration to the least priority that exceeded it. Memory grows with the size of the programs, not their number.
+     *
+     * @param bound least priority of the programs that are not checked yet
+     * @return the least-cost program of priority at least bound, or null if there is none
+     */
+    private Program deepen(ASTNode root, Holes holes, long bound) {
+        if (this.parallelism > 1) {
+            this.pool = new ForkJoinPool(this.parallelism);
+        }
+        try {
+            while (bound != Long.MAX_VALUE && !outOfBudget(0)) {
+                this.nextBound.reset();
+                this.subterms.nextGeneration();
+                long priority = this.minCosts[this.startId];
+                long size = this.minSizes[this.startId];
+                ASTNode program = this.pool == null ? depthFirst(root, holes, priority, size, bound)
+                        : parallelDepthFirst(root, holes, priority, size, bound);
+                if (program != null) {
+                    return new Program(program);
+                }
+                bound = this.nextBound.get();
+            }
+            return null;
+        } finally {
+            if (this.pool != null) {
+                this.pool.shutdownNow();
+                this.pool = null;
+            }
+        }
+    }
+
+    /**
+     * @return the program found by the workers, or null if there is none or the calling thread was interrupted, in
+     * which case the workers are interrupted when the pool shuts down
+     */
+    private ASTNode parallelDepthFirst(ASTNode root, Holes holes, long priority, long size, long bound) {
+        Solution solution = new Solution();
+        try {
+            this.pool.submit(new SearchTask(root, holes, priority, size, new Path(null, 0), bound, solution,
+                    new AtomicInteger())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.stopped.compareAndSet(null, SynthesisResult.Status.CANCELLED);
+            return null;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return solution.get();
+    }
+
+    /**
+     * Position of a partial program in the order of the sequential depth-first search: the indices of the
+     * expansions leading to it from the root. Paths share their prefixes.
+     */
+    private static final class Path {
+        final Path parent;
+        final int index;
+        final int depth;
+
+        Path(Path parent, int index) {
+            this.parent = parent;
+            this.index = index;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+        }
+
+        /**
+         * @return a negative number if a comes first, a positive one if b does, 0 if one is a prefix of the other
+         */
+        static int compare(Path a, Path b) {
+            while (a.depth > b.depth) {
+                a = a.parent;
+            }
+            while (b.depth > a.depth) {
+                b = b.parent;
+            }
+            if (a == b) {
+                return 0;
+            }
+            while (a.parent != b.parent) {
+                a = a.parent;
+                b = b.parent;
+            }
+            return Integer.compare(a.index, b.index);
+        }
+    }
+
+    /**
+     * The first solution in the sequential order among those found by the workers.
+     */
+    private static final class Solution {
+        private volatile Path path;
+        private ASTNode ast;
+
+        synchronized void offer(ASTNode ast, Path path) {
+            if (this.path == null || Path.compare(path, this.path) < 0) {
+                this.ast = ast;
+                this.path = path;
+            }
+        }
+
+        /**
+         * @return whether the partial program at that path only expands to programs after the solution
+         */
+        boolean precedes(Path path) {
+            Path found = this.path;
+            return found != null && Path.compare(found, path) < 0;
+        }
+
+        synchronized ASTNode get() {
+            return this.ast;
+        }
+    }
+
+    /**
+     * One partial program of the parallel depth-first search. Its expansions are forked as long as the worker has
+     * little queued work and fewer than capacity partial programs are pending overall, and searched inline
+     * otherwise; idle workers steal the forked ones from the other workers' deques.
+     */
+    private final class SearchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ASTNode ast;
+        private final Holes holes;
+        private final long priority;
+        private final long size;
+        private final Path path;
+        private final long bound;
+        private final Solution solution;
+        /**
+         * forked tasks not joined yet, over all workers
+         */
+        private final AtomicInteger pending;
+
+        SearchTask(ASTNode ast, Holes holes, long priority, long size, Path path, long bound, Solution solution,
+                   AtomicInteger pending) {
+            this.ast = ast;
+            this.holes = holes;
+            this.priority = priority;
+            this.size = size;
+            this.path = path;
+            this.bound = bound;
+            this.solution = solution;
+            this.pending = pending;
+        }
+
+        @Override
+        protected void compute() {
+            search(this.ast, this.holes, this.priority, this.size, this.path);
+        }
+
+        private void search(ASTNode ast, Holes holes, long priority, long size, Path path) {
+            if (this.solution.precedes(path) || outOfBudget(this.pending.get())) {
+                return;
+            }
+            if (priority > this.bound) {
+                nextBound.accumulate(priority);
+                return;
+            }
+            if (checkComplete(ast)) {
+                if (check(ast)) {
+                    this.solution.offer(ast, path);
+                }
+                return;
+            }
+            int hole = holes.id;
+            List<SearchTask> forked = new ArrayList<>();
+            List<Expansion> holeExpansions = expansions.get(hole);
+            for (int k = 0; k < holeExpansions.size(); ++k) {
+                Expansion expansion = holeExpansions.get(k);
+                long nextSize = size - minSizes[hole] + expansion.minSize;
+                ASTNode expanded = expand(ast, expansion, nextSize);
+                if (expanded == null) {
+                    continue;
+                }
+                long next = priority - minCosts[hole] + expansion.cost;
+                if (getSurplusQueuedTaskCount() < SURPLUS_TASKS && this.pending.get() < capacity) {
+                    SearchTask task = new SearchTask(expanded, expansion.fill(holes), next, nextSize,
+                            new Path(path, k), this.bound, this.solution, this.pending);
+                    this.pending.incrementAndGet();
+                    task.fork();
+                    forked.add(task);
+                } else {
+                    search(expanded, expansion.fill(holes), next, nextSize, new Path(path, k));
+                }
+            }
+            for (SearchTask task : forked) {
+                task.join();
+                this.pending.decrementAndGet();
             }
-            ASTNode ast = workList.poll();
-            if (checkComplete(ast) && satisfy(ast, examples)) {
-                return new Program(ast);
+        }
+    }
+
+    /**
+     * @return a program satisfying the examples among the expansions of ast of priority up to bound, or null
+     */
+    private ASTNode depthFirst(ASTNode ast, Holes holes, long priority, long size, long bound) {
+        if (outOfBudget(0)) {
+            return null;
+        }
+        if (priority > bound) {
+            this.nextBound.accumulate(priority);
+            return null;
+        }
+        if (checkComplete(ast)) {
+            return check(ast) ? ast : null;
+        }
+        int hole = holes.id;
+        for (Expansion expansion : this.expansions.get(hole)) {
+            long nextSize = size - this.minSizes[hole] + expansion.minSize;
+            ASTNode expanded = expand(ast, expansion, nextSize);
+            if (expanded != null) {
+                ASTNode program = depthFirst(expanded, expansion.fill(holes),
+                        priority - this.minCosts[hole] + expansion.cost, nextSize, bound);
+                if (program != null) {
+                    return program;
+                }
             }
-            workList.addAll(expand(cfg, ast));
         }
         return null;
+    }
+
+    /**
+     * @param entries partial programs held besides the table of canonical subterms
+     * @return whether the run must stop, recording why the first time
+     */
+    private boolean outOfBudget(long entries) {
+        if (this.stopped.get() != null) {
+            return true;
+        }
+        SynthesisResult.Status status = this.budget.check(entries + this.subterms.size());
+        if (status == null) {
+            return false;
+        }
+        this.stopped.compareAndSet(null, status);
+        return true;
+    }
 
+    /**
+     * @return whether the complete program satisfies the examples, recording it as the best partial solution if it
+     * satisfies more of them than the ones checked before
+     */
+    private boolean check(ASTNode ast) {
+        int[] values = BatchEvaluator.evalExpr(CompiledNode.compile(ast), this.table);
+        int[] outputs = this.table.getOutputs();
+        int matches = 0;
+        for (int i = 0; i < outputs.length; ++i) {
+            if (values[i] == outputs[i]) {
+                ++matches;
+            }
+        }
+        if (matches > this.bestMatches) {
+            recordPartial(ast, matches);
+        }
+        return matches == outputs.length;
     }
 
-    public ASTNode copyAST(ASTNode src) {
-        List<ASTNode> children = new ArrayList<>();
-        String rootName = src.getSymbol().getName();
-        for (ASTNode child : src.getChildren()) {
-            children.add(copyAST(child));
+    private synchronized void recordPartial(ASTNode ast, int matches) {
+        if (matches > this.bestMatches) {
+            this.bestPartial = ast;
+            this.bestMatches = matches;
         }
-        if (src.getSymbol().isTerminal()) {
-            return new ASTNode(new Terminal(rootName), children);
-        } else {
-            return new ASTNode(new NonTerminal(rootName), children);
+    }
+
+    /**
+     * @param size least size of the programs the result expands to
+     * @return ast with its first hole filled by the expansion, or null if the result is pruned
+     */
+    private ASTNode expand(ASTNode ast, Expansion expansion, long size) {
+        if (size > this.maxSize) {
+            return null;
+        }
+        ASTNode expanded = fillFirstHole(ast, expansion.template, this.subterms);
+        // complete programs are checked exactly when they are reached
+        if (expanded == null || expanded.holes() > 0 && !this.intervals.mayReach(expanded)) {
+            return null;
+        }
+        return expanded;
+    }
+
+    /**
+     * @return the productive expansions of every nonterminal, by id
+     */
+    private List<List<Expansion>> expansions(CFG cfg, GrammarAnalysis analysis) {
+        HoleNode[] holes = new HoleNode[cfg.getNonTerminalCount()];
+        for (int id = 0; id < holes.length; ++id) {
+            holes[id] = new HoleNode(cfg.getNonTerminal(id), id);
         }
+        List<List<Expansion>> expansions = new ArrayList<>();
+        for (int id = 0; id < cfg.getNonTerminalCount(); ++id) {
+            List<Expansion> list = new ArrayList<>();
+            for (Production prod : cfg.getProductions(id)) {
+                long cost = analysis.productionCost(prod, this.costModel::cost, this.minCosts);
+                if (cost == GrammarAnalysis.UNPRODUCTIVE || analysis.minSize(prod) > this.maxSize) {
+                    continue;
+                }
+                List<ASTNode> children = new ArrayList<>();
+                List<Integer> holeIds = new ArrayList<>();
+                for (Symbol arg : prod.getArgumentSymbols()) {
+                    if (arg.isNonTerminal()) {
+                        int argId = cfg.getId(arg);
+                        children.add(holes[argId]);
+                        holeIds.add(argId);
+                    } else {
+                        children.add(this.nodes.leaf(arg));
+                    }
+                }
+                list.add(new Expansion(new DerivedNode(prod, id, children),
+                        holeIds.stream().mapToInt(Integer::intValue).toArray(), cost, analysis.minSize(prod)));
+            }
+            expansions.add(list);
+        }
+        return expansions;
     }
 
     public boolean checkLeaf(ASTNode node) {
@@ -55,7 +640,9 @@ public class TopDownEnumSynthesizer implements ISynthesizer {
     }
 
     /**
-     * Replace non-terminal nodes once a time (non-terminal symbols must be leaf nodes)
+     * Replace non-terminal nodes once a time (non-terminal symbols must be leaf nodes). Partial programs are
+     * persistent: an expansion copies only the spine from the root to the first hole and shares every other subtree
+     * with root, and the holes are located through the hole counts cached in the nodes instead of by walking the tree.
      */
     public List<ASTNode> expand(CFG cfg, ASTNode root) {
         ASTNode nodeToExpand = findNodeToExpand(root);
@@ -63,73 +650,84 @@ public class TopDownEnumSynthesizer implements ISynthesizer {
             return new ArrayList<>();
         }
         List<Production> prods = cfg.getProductions((NonTerminal) nodeToExpand.getSymbol());
-        List<ASTNode> replaceList = new ArrayList<>();
+        List<ASTNode> expanded = new ArrayList<>();
         for (Production prod : prods) {
             List<ASTNode> children = prod.getArgumentSymbols().stream()
-                    .map(i -> new ASTNode(i, new ArrayList<>())).collect(Collectors.toList());
-            replaceList.add(new ASTNode(prod.getOperator(), children));
-        }
-        List<ASTNode> expanded = new ArrayList<>();
-        for (ASTNode rep : replaceList) {
-            ASTNode copy = copyAST(root);
-            ASTNode src = findNodeToExpand(copy);
-            expanded.add(replace(copy, src, rep));
+                    .map(this.nodes::leaf).collect(Collectors.toList());
+            expanded.add(fillFirstHole(root, new DerivedNode(prod, cfg.getId(prod.getReturnSymbol()), children)));
         }
         return expanded;
     }
 
-    public ASTNode replace(ASTNode root, ASTNode src, ASTNode dest) {
-        if (root == src) {
-            return dest;
-        }
-        for (int i = 0; i < root.getChildren().size(); ++i) {
-            ASTNode child = root.getChild(i);
-            ASTNode repSub = replace(child, src, dest);
-            if (repSub != child) {
-                root.getChildren().set(i, repSub);
-                break;
+    /**
+     * The spine is built without the node factory: partial programs are all distinct, and interning them would keep
+     * every program ever enumerated alive.
+     *
+     * @return root with its first hole in preorder replaced by dest, copying only the nodes on the path to it
+     */
+    public ASTNode fillFirstHole(ASTNode root, ASTNode dest) {
+        return fillFirstHole(root, dest, null);
+    }
+
+    /**
+     * @param subterms table of the canonical subterms, or null to keep every expansion
+     * @return root with its first hole replaced by dest, or null if a subterm it completes is redundant
+     */
+    private ASTNode fillFirstHole(ASTNode root, ASTNode dest, SubtermTable subterms) {
+        ASTNode filled = root;
+        if (root.getChildren().isEmpty()) {
+            filled = dest;
+        } else {
+            for (int i = 0; i < root.getChildren().size(); ++i) {
+                if (root.getChild(i).holes() > 0) {
+                    ASTNode child = fillFirstHole(root.getChild(i), dest, subterms);
+                    if (child == null) {
+                        return null;
+                    }
+                    List<ASTNode> children = new ArrayList<>(root.getChildren());
+                    children.set(i, child);
+                    filled = root.withChildren(children);
+                    break;
+                }
             }
         }
-        return root;
+        // the subterms completed by this expansion lie on the path to the hole
+        if (subterms != null && filled.holes() == 0 && !subterms.isCanonical((DerivedNode) filled)) {
+            return null;
+        }
+        return filled;
     }
 
     //null means no node to expand
     public ASTNode findNodeToExpand(ASTNode root) {
-        if (checkLeaf(root)) {
-            if (root.getSymbol().isTerminal()) {
-                return null;
-            } else if (root.getSymbol().isNonTerminal()) {
-                return root;
-            }
+        if (root.holes() == 0) {
+            return null;
         }
-        for (ASTNode child : root.getChildren()) {
-            ASTNode exp = findNodeToExpand(child);
-            if (exp != null) {
-                return exp;
+        while (!checkLeaf(root)) {
+            for (ASTNode child : root.getChildren()) {
+                if (child.holes() > 0) {
+                    root = child;
+                    break;
+                }
             }
         }
-        return null;
+        return root;
     }
 
     public boolean checkComplete(ASTNode root) {
-        if (root == null) return true;
-        if (root.getSymbol().isNonTerminal()) return false;
-        for (ASTNode child : root.getChildren()) {
-            if (!checkComplete(child)) {
-                return false;
-            }
-        }
-        return true;
-
+        return root == null || root.holes() == 0;
     }
 
     public boolean satisfy(ASTNode root, List<Example> examples) {
-        Program program = new Program(root);
-        for (Example example : examples) {
-            if (Interpreter.evaluate(program, example.getInput()) != example.getOutput()) {
-                return false;
-            }
+        ExampleTable table = exampleTable(examples);
+        return Arrays.equals(BatchEvaluator.evalExpr(CompiledNode.compile(root), table), table.getOutputs());
+    }
+
+    private ExampleTable exampleTable(List<Example> examples) {
+        if (examples != this.tableExamples) {
+            this.table = new ExampleTable(examples);
+            this.tableExamples = examples;
         }
-        return true;
+        return this.table;
     }
 }
@@ -0,0 +1,262 @@
+package synth.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only storage of fixed-width vectors outside of the Java heap. Vectors are packed into direct buffers, so
+ * that banks of millions of entries cost a few objects per chunk instead of one array per entry, and the garbage
+ * collector never scans them. Vectors are identified by their insertion index and copied in and out.
+ * <p>
+ * The first chunk holds the expected number of vectors, rounded up to a power of two, and every next chunk twice as
+ * many as the previous one up to MAX_CHUNK_BYTES, so that the many small arenas of sub-problems stay small while the
+ * large ones take few chunks.
+ * <p>
+ * Reads are safe from several threads as long as no vector is added or set meanwhile.
+ *
+ * @param <V> type of the vectors, int[] or long[]
+ */
+abstract class VectorArena<V> {
+    private static final int MAX_CHUNK_BYTES = 1 << 22;
+    /**
+     * expected number of vectors of an arena whose final size is unknown
+     */
+    static final int DEFAULT_SIZE = 1 << 10;
+
+    /**
+     * number of elements of every vector
+     */
+    protected final int width;
+    /**
+     * number of vectors of the first chunk, a power of two
+     */
+    private final int first;
+    /**
+     * number of vectors of the largest chunks, a power of two no smaller than first
+     */
+    private final int last;
+    private final int lastShift;
+    /**
+     * number of chunks smaller than last
+     */
+    private final int growingChunks;
+    /**
+     * number of vectors of the chunks allocated so far
+     */
+    private int capacity;
+    private int size;
+
+    private VectorArena(int width, int elementBytes, int expectedSize) {
+        this.width = width;
+        this.last = Integer.highestOneBit(Math.max(1, MAX_CHUNK_BYTES / Math.max(1, width * elementBytes)));
+        this.first = Math.min(this.last, ceilPowerOfTwo(expectedSize));
+        this.lastShift = Integer.numberOfTrailingZeros(this.last);
+        this.growingChunks = this.lastShift - Integer.numberOfTrailingZeros(this.first);
+    }
+
+    /**
+     * @param expectedSize number of vectors the first chunk is sized for
+     */
+    static Ints ofInts(int width, int expectedSize) {
+        return new Ints(width, expectedSize);
+    }
+
+    static Longs ofLongs(int width, int expectedSize) {
+        return new Longs(width, expectedSize);
+    }
+
+    private static int ceilPowerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the index of the vector
+     */
+    public int add(V vector) {
+        if (this.size == this.capacity) {
+            int vectors = this.capacity < this.last - this.first ? this.capacity + this.first : this.last;
+            addChunk(vectors);
+            this.capacity += vectors;
+        }
+        set(this.size, vector);
+        return this.size++;
+    }
+
+    /**
+     * @return a copy of the vector at index
+     */
+    public abstract V get(int index);
+
+    /**
+     * Overwrite the vector at index.
+     */
+    public abstract void set(int index, V vector);
+
+    /**
+     * @return whether the vector at index equals vector, without copying it
+     */
+    public abstract boolean matches(int index, V vector);
+
+    /**
+     * @return a read-only view of the vectors, copying each one on access
+     */
+    public List<V> asList() {
+        return new AbstractList<>() {
+            @Override
+            public V get(int index) {
+                return VectorArena.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return VectorArena.this.size;
+            }
+        };
+    }
+
+    /**
+     * Allocate the next chunk.
+     *
+     * @param vectors number of vectors of the chunk
+     */
+    protected abstract void addChunk(int vectors);
+
+    /**
+     * The chunks before the largest ones hold first * 2^c vectors and start at first * (2^c - 1), i.e. index + first
+     * has its highest bit at the chunk; the largest ones then follow every last vectors.
+     *
+     * @return the chunk of the vector at index
+     */
+    protected final int chunk(int index) {
+        int shifted = index + this.first;
+        if (shifted < this.last) {
+            return Integer.numberOfLeadingZeros(this.first) - Integer.numberOfLeadingZeros(shifted);
+        }
+        return this.growingChunks + (shifted >>> this.lastShift) - 1;
+    }
+
+    /**
+     * @return the offset of the first element of the vector at index in its chunk
+     */
+    protected final int offset(int index) {
+        int shifted = index + this.first;
+        if (shifted < this.last) {
+            return (shifted - Integer.highestOneBit(shifted)) * this.width;
+        }
+        return (shifted & (this.last - 1)) * this.width;
+    }
+
+    protected static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(Math.max(1, bytes)).order(ByteOrder.nativeOrder());
+    }
+
+    static final class Ints extends VectorArena<int[]> {
+        private final List<IntBuffer> chunks = new ArrayList<>();
+
+        private Ints(int width, int expectedSize) {
+            super(width, Integer.BYTES, expectedSize);
+        }
+
+        /**
+         * @return element k of the vector at index
+         */
+        public int get(int index, int k) {
+            return this.chunks.get(chunk(index)).get(offset(index) + k);
+        }
+
+        public void set(int index, int k, int value) {
+            this.chunks.get(chunk(index)).put(offset(index) + k, value);
+        }
+
+        @Override
+        public int[] get(int index) {
+            IntBuffer chunk = this.chunks.get(chunk(index));
+            int offset = offset(index);
+            int[] vector = new int[this.width];
+            for (int k = 0; k < this.width; ++k) {
+                vector[k] = chunk.get(offset + k);
+            }
+            return vector;
+        }
+
+        @Override
+        public void set(int index, int[] vector) {
+            IntBuffer chunk = this.chunks.get(chunk(index));
+            int offset = offset(index);
+            for (int k = 0; k < this.width; ++k) {
+                chunk.put(offset + k, vector[k]);
+            }
+        }
+
+        @Override
+        public boolean matches(int index, int[] vector) {
+            IntBuffer chunk = this.chunks.get(chunk(index));
+            int offset = offset(index);
+            for (int k = 0; k < this.width; ++k) {
+                if (chunk.get(offset + k) != vector[k]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected void addChunk(int vectors) {
+            this.chunks.add(allocate(vectors * this.width * Integer.BYTES).asIntBuffer());
+        }
+    }
+
+    static final class Longs extends VectorArena<long[]> {
+        private final List<LongBuffer> chunks = new ArrayList<>();
+
+        private Longs(int width, int expectedSize) {
+            super(width, Long.BYTES, expectedSize);
+        }
+
+        @Override
+        public long[] get(int index) {
+            LongBuffer chunk = this.chunks.get(chunk(index));
+            int offset = offset(index);
+            long[] vector = new long[this.width];
+            for (int k = 0; k < this.width; ++k) {
+                vector[k] = chunk.get(offset + k);
+            }
+            return vector;
+        }
+
+        @Override
+        public void set(int index, long[] vector) {
+            LongBuffer chunk = this.chunks.get(chunk(index));
+            int offset = offset(index);
+            for (int k = 0; k < this.width; ++k) {
+                chunk.put(offset + k, vector[k]);
+            }
+        }
+
+        @Override
+        public boolean matches(int index, long[] vector) {
+            LongBuffer chunk = this.chunks.get(chunk(index));
+            int offset = offset(index);
+            for (int k = 0; k < this.width; ++k) {
+                if (chunk.get(offset + k) != vector[k]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected void addChunk(int vectors) {
+            this.chunks.add(allocate(vectors * this.width * Long.BYTES).asLongBuffer());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package synth.core;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from value vectors to bank indices, used to find observationally equivalent
+ * candidates. The table only stores the bank index and the cached hash of every key; the vectors themselves stay in
+ * the bank and are compared through {@link Keys}, so a lookup allocates nothing and a key costs two ints.
+ *
+ * @param <V> type of the value vectors
+ */
+public final class VectorTable<V> {
+
+    /**
+     * Hashing and comparison of value vectors against the vectors stored in a bank.
+     */
+    public interface Keys<V> {
+        int hash(V key);
+
+        /**
+         * @return whether key equals the vector of bank entry id
+         */
+        boolean matches(V key, int id);
+    }
+
+    private static final int EMPTY = -1;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final Keys<V> keys;
+    private int[] ids;
+    private int[] hashes;
+    private int mask;
+    private int count;
+
+    public VectorTable(Keys<V> keys) {
+        this(keys, 16);
+    }
+
+    public VectorTable(Keys<V> keys, int expectedSize) {
+        this.keys = keys;
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * @return the bank index of the vector equal to key, or -1 if there is none
+     */
+    public int get(V key) {
+        int hash = this.keys.hash(key);
+        for (int slot = hash & this.mask; ; slot = (slot + 1) & this.mask) {
+            int id = this.ids[slot];
+            if (id == EMPTY) {
+                return -1;
+            }
+            if (this.hashes[slot] == hash && this.keys.matches(key, id)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Map key to id unless an equal vector is already present.
+     *
+     * @return the bank index of the vector equal to key if there is one, otherwise -1 after inserting key with id
+     */
+    public int putIfAbsent(V key, int id) {
+        int hash = this.keys.hash(key);
+        int slot = hash & this.mask;
+        for (; ; slot = (slot + 1) & this.mask) {
+            int existing = this.ids[slot];
+            if (existing == EMPTY) {
+                break;
+            }
+            if (this.hashes[slot] == hash && this.keys.matches(key, existing)) {
+                return existing;
+            }
+        }
+        this.ids[slot] = id;
+        this.hashes[slot] = hash;
+        if (++this.count > this.ids.length * LOAD_FACTOR) {
+            rehash();
+        }
+        return -1;
+    }
+
+    private void allocate(int capacity) {
+        this.ids = new int[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(this.ids, EMPTY);
+    }
+
+    private void rehash() {
+        int[] oldIds = this.ids;
+        int[] oldHashes = this.hashes;
+        allocate(oldIds.length << 1);
+        for (int i = 0; i < oldIds.length; ++i) {
+            if (oldIds[i] == EMPTY) {
+                continue;
+            }
+            int slot = oldHashes[i] & this.mask;
+            while (this.ids[slot] != EMPTY) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.ids[slot] = oldIds[i];
+            this.hashes[slot] = oldHashes[i];
+        }
+    }
+
+    public static int hash(int[] values) {
+        int h = 0x9E3779B9;
+        for (int value : values) {
+            h = (h ^ value) * 0x01000193;
+            h ^= h >>> 15;
+        }
+        return mix(h);
+    }
+
+    public static int hash(long[] values) {
+        int h = 0x9E3779B9;
+        for (long value : values) {
+            h = (h ^ (int) (value ^ (value >>> 32))) * 0x01000193;
+            h ^= h >>> 15;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Spread the bits of h so that the low bits used for the slot index depend on all of them.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
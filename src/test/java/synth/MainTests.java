@@ -0,0 +1,102 @@
+package synth;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests for the batch mode of the command line on small spec files.
+ */
+public class MainTests {
+
+    /**
+     * @return the lines written by a batch run
+     */
+    private static String[] runBatch(List<String> args) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8)) {
+            Main.batch(args, out);
+        }
+        return bytes.toString(StandardCharsets.UTF_8).split(System.lineSeparator());
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        try {
+            Files.write(dir.resolve("a.txt"), List.of("x=1, y=2, z=3 -> 3", "x=4, y=0, z=1 -> 4"));
+            // the output has a tab inside, which the error message repeats
+            Files.write(dir.resolve("b.txt"), List.of("x=1, y=2, z=3 -> 3\t4"));
+            Files.write(dir.resolve("c.txt"), List.of("x=1, y=2, z=3 -> 6", "x=4, y=0, z=1 -> 5"));
+            String[] lines = runBatch(List.of("--jobs", "2", "--timeout", "30", dir.toString()));
+            Assert.assertEquals(3, lines.length);
+            String[] solved = lines[0].split("\t");
+            Assert.assertEquals(4, solved.length);
+            Assert.assertEquals(dir.resolve("a.txt").toString(), solved[0]);
+            Assert.assertEquals("SOLVED", solved[1]);
+            // found by either synthesizer of the portfolio
+            Assert.assertTrue(solved[3], solved[3].startsWith("Add("));
+            String[] error = lines[1].split("\t");
+            Assert.assertEquals(4, error.length);
+            Assert.assertEquals("ERROR", error[1]);
+            Assert.assertTrue(error[3], error[3].contains("3\\t4"));
+            Assert.assertEquals("SOLVED", lines[2].split("\t")[1]);
+            // one thread runs DivAndCon alone, and every synthesizer gets the entry budget
+            lines = runBatch(List.of("--jobs", "1", "--entries", "1", dir.resolve("c.txt").toString()));
+            Assert.assertEquals(1, lines.length);
+            Assert.assertEquals("OUT_OF_MEMORY", lines[0].split("\t")[1]);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testBatchKeepsStdoutOpen() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            PrintStream stdout = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+            Main.batch(List.of(dir.toString()), stdout);
+            stdout.println("after");
+            Assert.assertFalse(stdout.checkError());
+            Assert.assertEquals("after" + System.lineSeparator(), bytes.toString(StandardCharsets.UTF_8));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testBatchUsage() {
+        for (List<String> args : List.of(List.of("--jobs"), List.of("benchmark", "--timeout"),
+                List.of("--jobs", "0", "benchmark"), List.of("--entries", "many", "benchmark"))) {
+            try {
+                runBatch(args);
+                Assert.fail("accepted " + args);
+            } catch (IllegalArgumentException e) {
+                // reported as a usage error by main
+            }
+        }
+    }
+
+    @Test
+    public void testEscape() {
+        Assert.assertEquals("a\\tb\\nc\\\\d", Main.escape("a\tb\nc\\d"));
+    }
+}
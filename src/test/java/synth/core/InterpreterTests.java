@@ -2,8 +2,10 @@ package synth.core;
 
 import org.junit.Assert;
 import org.junit.Test;
+import synth.cfg.Opcode;
 import synth.cfg.Terminal;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -76,4 +78,169 @@ public class InterpreterTests {
         int result = Interpreter.evaluate(program, buildEnvironment());
         Assert.assertEquals(300, result);
     }
+
+    @Test
+    public void testInterpreter4() {
+        // Ite(And(Lt(y, x), Eq(z, 20)), 1, Ite(Or(Lt(x, y), Not(Eq(x, x))), 2, 3))
+        ASTNode x = new ASTNode(new Terminal("x"), Collections.emptyList());
+        ASTNode y = new ASTNode(new Terminal("y"), Collections.emptyList());
+        ASTNode z = new ASTNode(new Terminal("z"), Collections.emptyList());
+        ASTNode twenty = new ASTNode(new Terminal("20"), Collections.emptyList());
+        Program program = new Program(
+                new ASTNode(new Terminal("Ite"),
+                        List.of(
+                                new ASTNode(new Terminal("And"),
+                                        List.of(
+                                                new ASTNode(new Terminal("Lt"), List.of(y, x)),
+                                                new ASTNode(new Terminal("Eq"), List.of(z, twenty)))),
+                                new ASTNode(new Terminal("1"), Collections.emptyList()),
+                                new ASTNode(new Terminal("Ite"),
+                                        List.of(
+                                                new ASTNode(new Terminal("Or"),
+                                                        List.of(
+                                                                new ASTNode(new Terminal("Lt"), List.of(x, y)),
+                                                                new ASTNode(new Terminal("Not"),
+                                                                        List.of(new ASTNode(new Terminal("Eq"), List.of(x, x)))))),
+                                                new ASTNode(new Terminal("2"), Collections.emptyList()),
+                                                new ASTNode(new Terminal("3"), Collections.emptyList())))
+                        )));
+        Assert.assertEquals(2, CompiledNode.compile(program.getRoot()).evalExpr(CompiledNode.bindEnvironment(buildEnvironment())));
+    }
+
+    @Test
+    public void testCompiledMatchesInterpreter() {
+        // Ite(Lt(x, 3), Add(y, z), Multiply(y, z)) on several environments
+        ASTNode root = new ASTNode(new Terminal("Ite"),
+                List.of(
+                        new ASTNode(new Terminal("Lt"),
+                                List.of(
+                                        new ASTNode(new Terminal("x"), Collections.emptyList()),
+                                        new ASTNode(new Terminal("3"), Collections.emptyList()))),
+                        new ASTNode(new Terminal("Add"),
+                                List.of(
+                                        new ASTNode(new Terminal("y"), Collections.emptyList()),
+                                        new ASTNode(new Terminal("z"), Collections.emptyList()))),
+                        new ASTNode(new Terminal("Multiply"),
+                                List.of(
+                                        new ASTNode(new Terminal("y"), Collections.emptyList()),
+                                        new ASTNode(new Terminal("z"), Collections.emptyList())))
+                ));
+        CompiledNode compiled = CompiledNode.compile(root);
+        for (int x = -2; x <= 5; ++x) {
+            Map<String, Integer> env = buildEnvironment();
+            env.put("x", x);
+            Assert.assertEquals(Interpreter.evaluateExpr(root, env), compiled.evalExpr(CompiledNode.bindEnvironment(env)));
+        }
+    }
+
+    @Test
+    public void testBatchEvaluator() {
+        // Ite(Lt(x, 3), Add(y, z), Multiply(y, z)) on every example at once
+        ASTNode root = new ASTNode(new Terminal("Ite"),
+                List.of(
+                        new ASTNode(new Terminal("Lt"),
+                                List.of(
+                                        new ASTNode(new Terminal("x"), Collections.emptyList()),
+                                        new ASTNode(new Terminal("3"), Collections.emptyList()))),
+                        new ASTNode(new Terminal("Add"),
+                                List.of(
+                                        new ASTNode(new Terminal("y"), Collections.emptyList()),
+                                        new ASTNode(new Terminal("z"), Collections.emptyList()))),
+                        new ASTNode(new Terminal("Multiply"),
+                                List.of(
+                                        new ASTNode(new Terminal("y"), Collections.emptyList()),
+                                        new ASTNode(new Terminal("z"), Collections.emptyList())))
+                ));
+        List<Example> examples = new ArrayList<>();
+        for (int x = -2; x <= 5; ++x) {
+            Map<String, Integer> env = buildEnvironment();
+            env.put("x", x);
+            examples.add(new Example(env, Interpreter.evaluateExpr(root, env)));
+        }
+        ExampleTable table = new ExampleTable(examples);
+        Assert.assertArrayEquals(table.getOutputs(), BatchEvaluator.evalExpr(CompiledNode.compile(root), table));
+    }
+
+    @Test
+    public void testBatchPredicate() {
+        // Not(Or(Lt(x, y), Eq(x, z))) on more examples than fit in one bitset word
+        ASTNode x = new ASTNode(new Terminal("x"), Collections.emptyList());
+        ASTNode y = new ASTNode(new Terminal("y"), Collections.emptyList());
+        ASTNode z = new ASTNode(new Terminal("z"), Collections.emptyList());
+        ASTNode pred = new ASTNode(new Terminal("Not"),
+                List.of(new ASTNode(new Terminal("Or"),
+                        List.of(
+                                new ASTNode(new Terminal("Lt"), List.of(x, y)),
+                                new ASTNode(new Terminal("Eq"), List.of(x, z))))));
+        List<Example> examples = new ArrayList<>();
+        for (int x0 = 0; x0 < 100; ++x0) {
+            Map<String, Integer> env = buildEnvironment();
+            env.put("x", x0);
+            examples.add(new Example(env, 0));
+        }
+        long[] bits = BatchEvaluator.evalPred(CompiledNode.compile(pred), new ExampleTable(examples));
+        Assert.assertEquals(2, bits.length);
+        for (int i = 0; i < examples.size(); ++i) {
+            Assert.assertEquals(Interpreter.evaluatePred(pred, examples.get(i).getInput()), Bits.get(bits, i));
+        }
+        Assert.assertEquals(84, Bits.count(bits));
+    }
+
+    @Test
+    public void testBatchMatchesInterpreter() {
+        // Ite(Or(Lt(x, y), Not(Eq(z, 3))), Max(Multiply(x, 2), Subtract(y, z)), Min(Add(x, z), 1))
+        ASTNode x = new ASTNode(new Terminal("x"), Collections.emptyList());
+        ASTNode y = new ASTNode(new Terminal("y"), Collections.emptyList());
+        ASTNode z = new ASTNode(new Terminal("z"), Collections.emptyList());
+        ASTNode lt = new ASTNode(new Terminal("Lt"), List.of(x, y));
+        ASTNode notEq = new ASTNode(new Terminal("Not"),
+                List.of(new ASTNode(new Terminal("Eq"),
+                        List.of(z, new ASTNode(new Terminal("3"), Collections.emptyList())))));
+        ASTNode pred = new ASTNode(new Terminal("Or"), List.of(lt, notEq));
+        ASTNode both = new ASTNode(new Terminal("And"), List.of(lt, notEq));
+        ASTNode expr = new ASTNode(new Terminal("Ite"),
+                List.of(
+                        pred,
+                        new ASTNode(new Terminal("Max"),
+                                List.of(
+                                        new ASTNode(new Terminal("Multiply"),
+                                                List.of(x, new ASTNode(new Terminal("2"), Collections.emptyList()))),
+                                        new ASTNode(new Terminal("Subtract"), List.of(y, z)))),
+                        new ASTNode(new Terminal("Min"),
+                                List.of(
+                                        new ASTNode(new Terminal("Add"), List.of(x, z)),
+                                        new ASTNode(new Terminal("1"), Collections.emptyList())))
+                ));
+        CompiledNode compiled = CompiledNode.compile(expr);
+        // example counts around the 64 examples of a bitset word
+        for (int size : new int[]{1, 63, 64, 65, 130}) {
+            List<Example> examples = new ArrayList<>();
+            for (int i = 0; i < size; ++i) {
+                Map<String, Integer> env = new HashMap<>();
+                env.put("x", (i * 7) % 11 - 5);
+                env.put("y", (i * 5) % 13 - 6);
+                env.put("z", i % 5);
+                examples.add(new Example(env, i));
+            }
+            ExampleTable table = new ExampleTable(examples);
+            Assert.assertEquals(size, table.size());
+            int[] values = BatchEvaluator.evalExpr(compiled, table);
+            long[] predBits = BatchEvaluator.evalPred(CompiledNode.compile(pred), table);
+            long[] bothBits = BatchEvaluator.evalPred(CompiledNode.compile(both), table);
+            long[] notBits = BatchEvaluator.evalPred(CompiledNode.compile(notEq), table);
+            Assert.assertEquals(Bits.words(size), predBits.length);
+            for (int i = 0; i < size; ++i) {
+                Map<String, Integer> env = examples.get(i).getInput();
+                Assert.assertEquals(i, table.getOutputs()[i]);
+                Assert.assertEquals((int) env.get("y"), table.getColumn(Opcode.slotOf("y"))[i]);
+                Assert.assertEquals(Interpreter.evaluateExpr(expr, env), values[i]);
+                Assert.assertEquals(Interpreter.evaluatePred(pred, env), Bits.get(predBits, i));
+                Assert.assertEquals(Interpreter.evaluatePred(both, env), Bits.get(bothBits, i));
+                Assert.assertEquals(Interpreter.evaluatePred(notEq, env), Bits.get(notBits, i));
+            }
+            // Not leaves the bits past the last example clear
+            Assert.assertEquals(examples.stream().filter(example -> Interpreter.evaluatePred(notEq, example.getInput()))
+                    .count(), Bits.count(notBits));
+        }
+    }
 }
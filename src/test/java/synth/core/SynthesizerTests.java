@@ -0,0 +1,701 @@
+package synth.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import synth.cfg.CFG;
+import synth.cfg.GrammarAnalysis;
+import synth.cfg.NonTerminal;
+import synth.cfg.Opcode;
+import synth.cfg.Production;
+import synth.cfg.Terminal;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Tests for the building blocks of the synthesizers on small hand-made example sets.
+ */
+public class SynthesizerTests {
+
+    private static ASTNode leaf(String name) {
+        return new ASTNode(new Terminal(name), Collections.emptyList());
+    }
+
+    @Test
+    public void testDecisionTreeUnifier() {
+        // 6 examples: x if x < 3, y if x == 3, z otherwise
+        int size = 6;
+        List<ASTNode> terms = List.of(leaf("x"), leaf("y"), leaf("z"));
+        List<long[]> termSats = List.of(new long[]{0b000011L}, new long[]{0b001100L}, new long[]{0b110000L});
+        List<ASTNode> preds = new ArrayList<>();
+        List<long[]> predBits = new ArrayList<>();
+        // a predicate that does not separate anything, and two useful ones
+        preds.add(new ASTNode(new Terminal("Lt"), List.of(leaf("1"), leaf("2"))));
+        predBits.add(new long[]{0b111111L});
+        preds.add(new ASTNode(new Terminal("Lt"), List.of(leaf("x"), leaf("3"))));
+        predBits.add(new long[]{0b000011L});
+        preds.add(new ASTNode(new Terminal("Eq"), List.of(leaf("x"), leaf("3"))));
+        predBits.add(new long[]{0b001100L});
+        ASTNode program = new DecisionTreeUnifier(size, terms, termSats, preds, predBits, new NodeFactory()).unify();
+        Assert.assertNotNull(program);
+        Assert.assertEquals("Ite(Lt(x, 3), x, Ite(Eq(x, 3), y, z))", program.toString());
+    }
+
+    @Test
+    public void testDecisionTreeUnifierInseparable() {
+        // the only predicate cannot tell apart the examples of x and y
+        List<ASTNode> terms = List.of(leaf("x"), leaf("y"));
+        List<long[]> termSats = List.of(new long[]{0b01L}, new long[]{0b10L});
+        List<ASTNode> preds = List.of(new ASTNode(new Terminal("Lt"), List.of(leaf("1"), leaf("2"))));
+        List<long[]> predBits = List.of(new long[]{0b11L});
+        Assert.assertNull(new DecisionTreeUnifier(2, terms, termSats, preds, predBits, new NodeFactory()).unify());
+    }
+
+    @Test
+    public void testGreedyCover() {
+        // the greedy choice takes the widest term first, then the one covering most of the rest
+        List<long[]> sats = List.of(
+                new long[]{0b000011L},
+                new long[]{0b011110L},
+                new long[]{0b100000L},
+                new long[]{0b100001L});
+        Assert.assertEquals(List.of(1, 3), TermSolver.greedyCover(6, sats));
+        Assert.assertNull(TermSolver.greedyCover(7, sats));
+    }
+
+    @Test
+    public void testPredicateSearch() {
+        List<ASTNode> preds = List.of(
+                new ASTNode(new Terminal("Lt"), List.of(leaf("x"), leaf("3"))),
+                new ASTNode(new Terminal("Lt"), List.of(leaf("1"), leaf("x"))),
+                new ASTNode(new Terminal("Eq"), List.of(leaf("x"), leaf("y"))),
+                new ASTNode(new Terminal("Eq"), List.of(leaf("x"), leaf("z"))));
+        List<long[]> predValues = List.of(
+                new long[]{0b0111L},
+                new long[]{0b1110L},
+                new long[]{0b0001L},
+                new long[]{0b1000L});
+        PredicateSearch search = new PredicateSearch(4, preds, predValues,
+                PredicateSearch.MAX_CONJUNCTS, PredicateSearch.MAX_DISJUNCTS, new NodeFactory());
+        // conjunction of the two predicates holding on a superset of the target
+        Assert.assertEquals("And(Lt(x, 3), Lt(1, x))", search.find(new long[]{0b0110L}).toString());
+        // disjunction of the predicates holding on a subset of the target
+        Assert.assertEquals("Or(Eq(x, y), Eq(x, z))", search.find(new long[]{0b1001L}).toString());
+        // every predicate holding on example 1 also holds on example 2
+        Assert.assertNull(search.find(new long[]{0b0010L}));
+    }
+
+    @Test
+    public void testNodeFactory() {
+        NodeFactory nodes = new NodeFactory();
+        ASTNode sum = nodes.node(NodeFactory.terminal("Add"), leaf("x"), leaf("y"));
+        ASTNode product = nodes.node(NodeFactory.terminal("Multiply"), sum, nodes.leaf(NodeFactory.terminal("x")));
+        // equal trees are the same node, whoever built their children
+        Assert.assertSame(sum, product.getChild(0));
+        Assert.assertSame(product, nodes.intern(new ASTNode(new Terminal("Multiply"),
+                List.of(new ASTNode(new Terminal("Add"), List.of(leaf("x"), leaf("y"))), leaf("x")))));
+        Assert.assertEquals(5, product.size());
+        Assert.assertEquals(3, product.depth());
+        Assert.assertEquals(4, nodes.size());
+    }
+
+    @Test
+    public void testSymbolIds() {
+        // two grammars over the same interned symbols, reached in opposite orders
+        NonTerminal e = NodeFactory.nonTerminal("E");
+        NonTerminal b = NodeFactory.nonTerminal("B");
+        Map<NonTerminal, List<Production>> first = new HashMap<>();
+        first.put(e, List.of(
+                new Production(e, NodeFactory.terminal("Ite"), List.of(b, e, e)),
+                new Production(e, NodeFactory.terminal("x"), Collections.emptyList()),
+                new Production(e, NodeFactory.terminal("1"), Collections.emptyList())));
+        first.put(b, List.of(new Production(b, NodeFactory.terminal("Lt"), List.of(e, e))));
+        CFG cfg = new CFG(e, first);
+        Map<NonTerminal, List<Production>> second = new HashMap<>();
+        second.put(b, List.of(new Production(b, NodeFactory.terminal("Lt"), List.of(e, e))));
+        second.put(e, List.of(new Production(e, NodeFactory.terminal("x"), Collections.emptyList())));
+        CFG other = new CFG(b, second);
+        Assert.assertEquals(0, cfg.getId(e));
+        Assert.assertEquals(1, cfg.getId(b));
+        Assert.assertEquals(0, other.getId(b));
+        Assert.assertEquals(1, other.getId(e));
+        Assert.assertEquals(-1, other.getId(NodeFactory.terminal("Ite")));
+        Assert.assertSame(cfg.getProductions(b), cfg.getProductions(cfg.getId(b)));
+        Assert.assertEquals(Opcode.ITE, cfg.getTerminal(cfg.getId(NodeFactory.terminal("Ite"))).getOpcode());
+        Assert.assertEquals(Opcode.CONST, NodeFactory.terminal("1").getOpcode());
+        Assert.assertEquals(Opcode.UNKNOWN, new Terminal("Foo").getOpcode());
+        // the first grammar is still synthesized with its own ids
+        List<Example> examples = new ArrayList<>();
+        for (int x = -2; x <= 2; ++x) {
+            examples.add(new Example(Map.of("x", x, "y", 0, "z", 0), Math.max(x, 1)));
+        }
+        Program program = new DivAndConSynthesizer().synthesize(cfg, examples);
+        Assert.assertNotNull(program);
+        for (Example example : examples) {
+            Assert.assertEquals(example.getOutput(), Interpreter.evaluate(program, example.getInput()));
+        }
+    }
+
+    @Test
+    public void testVectorTable() {
+        // every key collides, so lookups probe past the other keys, also across the resizes of the table
+        List<int[]> keys = new ArrayList<>();
+        VectorTable<int[]> table = new VectorTable<>(new VectorTable.Keys<>() {
+            @Override
+            public int hash(int[] key) {
+                return 42;
+            }
+
+            @Override
+            public boolean matches(int[] key, int id) {
+                return Arrays.equals(key, keys.get(id));
+            }
+        }, 4);
+        for (int i = 0; i < 100; ++i) {
+            int[] key = {i, -i};
+            Assert.assertEquals(-1, table.get(key));
+            Assert.assertEquals(-1, table.putIfAbsent(key, keys.size()));
+            keys.add(key);
+            Assert.assertEquals(i, table.putIfAbsent(new int[]{i, -i}, 1000));
+        }
+        Assert.assertEquals(100, table.size());
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertEquals(i, table.get(new int[]{i, -i}));
+        }
+        Assert.assertEquals(-1, table.get(new int[]{100, -100}));
+        // with the real hash, far past the load factor of the default capacity
+        List<long[]> bitsets = new ArrayList<>();
+        VectorTable<long[]> hashed = new VectorTable<>(new VectorTable.Keys<>() {
+            @Override
+            public int hash(long[] key) {
+                return VectorTable.hash(key);
+            }
+
+            @Override
+            public boolean matches(long[] key, int id) {
+                return Arrays.equals(key, bitsets.get(id));
+            }
+        });
+        for (int i = 0; i < 10000; ++i) {
+            long[] key = {i, (long) i << 40};
+            Assert.assertEquals(-1, hashed.putIfAbsent(key, bitsets.size()));
+            bitsets.add(key);
+        }
+        Assert.assertEquals(10000, hashed.size());
+        for (int i = 0; i < 10000; ++i) {
+            Assert.assertEquals(i, hashed.get(new long[]{i, (long) i << 40}));
+        }
+        Assert.assertTrue(VectorTable.hash(new int[]{1, 2}) != VectorTable.hash(new int[]{2, 1}));
+        Assert.assertEquals(VectorTable.hash(new int[]{1, 2}), VectorTable.hash(new int[]{1, 2}));
+    }
+
+    @Test
+    public void testVectorArena() {
+        // chunks of 4, 8, 16, 32 and 64 vectors
+        VectorArena.Ints ints = VectorArena.ofInts(3, 3);
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertEquals(i, ints.add(new int[]{i, -i, i * i}));
+        }
+        ints.set(59, new int[]{1, 2, 3});
+        ints.set(60, 1, 7);
+        for (int i = 0; i < 100; ++i) {
+            int[] expected = i == 59 ? new int[]{1, 2, 3} : new int[]{i, i == 60 ? 7 : -i, i * i};
+            Assert.assertArrayEquals(expected, ints.get(i));
+            Assert.assertTrue(ints.matches(i, expected));
+            Assert.assertEquals(expected[1], ints.get(i, 1));
+        }
+        // vectors of 2 MB: a first chunk of 1 vector, then chunks of 2 vectors, the most that fits
+        VectorArena.Longs longs = VectorArena.ofLongs(1 << 18, 1);
+        for (int i = 0; i < 6; ++i) {
+            long[] vector = new long[1 << 18];
+            vector[0] = i;
+            vector[vector.length - 1] = -i;
+            longs.add(vector);
+        }
+        for (int i = 0; i < 6; ++i) {
+            long[] vector = longs.get(i);
+            Assert.assertEquals(i, vector[0]);
+            Assert.assertEquals(-i, vector[vector.length - 1]);
+        }
+        Assert.assertEquals(6, longs.asList().size());
+    }
+
+    @Test
+    public void testBankReplacement() {
+        NonTerminal e = new NonTerminal("E");
+        Bank<?>[] banks = new Bank<?>[1];
+        Bank<int[]> bank = Bank.ofExpressions(e, banks, 2);
+        banks[0] = bank;
+        ASTNode large = new ASTNode(new Terminal("Add"), List.of(leaf("x"),
+                new ASTNode(new Terminal("Add"), List.of(leaf("y"), leaf("z")))));
+        ASTNode medium = new ASTNode(new Terminal("Add"), List.of(leaf("x"), leaf("y")));
+        Assert.assertEquals(0, bank.add(leaf("z"), new int[]{0, 0}));
+        Assert.assertEquals(1, bank.add(large, new int[]{1, 2}));
+        Assert.assertEquals(-1, bank.add(medium, new int[]{1, 2}));
+        Assert.assertEquals(medium, bank.getNode(1));
+        Assert.assertEquals(-1, bank.add(large, new int[]{1, 2}));
+        Assert.assertEquals(-1, bank.add(leaf("x"), new int[]{1, 2}));
+        Assert.assertEquals(leaf("x"), bank.getNode(1));
+        Assert.assertEquals(1, bank.nodeSize(1));
+        Assert.assertEquals(leaf("z"), bank.getNode(0));
+        Assert.assertEquals(2, bank.size());
+    }
+
+    @Test
+    public void testSubproblemCache() {
+        int[] rootBankSize = {10};
+        SubproblemCache cache = new SubproblemCache(() -> rootBankSize[0]);
+        long[] subset = {0b1011};
+        long[] other = {0b0100};
+        Assert.assertNull(cache.getSolution(subset));
+        Assert.assertFalse(cache.isKnownFailure(subset));
+        cache.putFailure(subset);
+        Assert.assertTrue(cache.isKnownFailure(subset));
+        Assert.assertFalse(cache.isKnownFailure(other));
+        // worth retrying once the top-level bank has grown, whichever sub-problem asks
+        rootBankSize[0] = 25;
+        Assert.assertFalse(cache.isKnownFailure(subset));
+        cache.putFailure(subset);
+        Assert.assertTrue(cache.isKnownFailure(subset));
+        Program program = new Program(leaf("x"));
+        cache.putSolution(new long[]{0b1011}, program);
+        Assert.assertSame(program, cache.getSolution(subset));
+        Assert.assertFalse(cache.isKnownFailure(subset));
+        cache.putFailure(subset);
+        Assert.assertSame(program, cache.getSolution(subset));
+        Assert.assertFalse(cache.isKnownFailure(subset));
+    }
+
+    @Test
+    public void testTopDownExpansionSharesSubtrees() {
+        CFG cfg = extendedGrammar();
+        NonTerminal e = cfg.getStartSymbol();
+        ASTNode complete = new ASTNode(new Terminal("Max"), List.of(leaf("x"), leaf("y")));
+        ASTNode partial = new ASTNode(new Terminal("Subtract"), List.of(complete, new ASTNode(e, List.of())));
+        List<ASTNode> expanded = new TopDownEnumSynthesizer().expand(cfg, partial);
+        Assert.assertEquals(6, expanded.size());
+        Assert.assertEquals("Subtract(Max(x, y), Ite(B, E, E))", expanded.get(0).toString());
+        Assert.assertEquals(3, expanded.get(0).holes());
+        Assert.assertSame(complete, expanded.get(0).getChild(0));
+    }
+
+    @Test
+    public void testBestFirstCostModel() {
+        CFG cfg = extendedGrammar();
+        List<Example> examples = new ArrayList<>();
+        for (int x = -3; x <= 12; x += 3) {
+            examples.add(new Example(Map.of("x", x, "y", 2 * x, "z", 0), 0));
+        }
+        // Subtract(x, x) is the first of the smallest programs, and costs more than Subtract(y, y) once x is expensive
+        Assert.assertEquals("Subtract(x, x)", new TopDownEnumSynthesizer().synthesize(cfg, examples).toString());
+        Assert.assertEquals("Subtract(y, y)", new TopDownEnumSynthesizer(CostModel.ofWeights(Map.of("x", 5)))
+                .synthesize(cfg, examples).toString());
+    }
+
+    @Test
+    public void testIterativeDeepening() {
+        CFG cfg = extendedGrammar();
+        List<Example> examples = new ArrayList<>();
+        for (int x = -3; x <= 12; x += 3) {
+            for (int y = -4; y <= 4; y += 4) {
+                examples.add(new Example(Map.of("x", x, "y", y, "z", 0), Math.max(x - y, 7)));
+            }
+        }
+        int size = new TopDownEnumSynthesizer().synthesize(cfg, examples).getRoot().size();
+        // a worklist too small for the search falls back to iterative deepening
+        for (TopDownEnumSynthesizer synthesizer : List.of(
+                new TopDownEnumSynthesizer(CostModel.SIZE, TopDownEnumSynthesizer.Search.ITERATIVE_DEEPENING),
+                new TopDownEnumSynthesizer(CostModel.SIZE, TopDownEnumSynthesizer.Search.BEST_FIRST, 10),
+                new TopDownEnumSynthesizer(CostModel.SIZE, TopDownEnumSynthesizer.Search.ITERATIVE_DEEPENING, 100, 4))) {
+            Program program = synthesizer.synthesize(cfg, examples);
+            Assert.assertEquals(size, program.getRoot().size());
+            for (Example example : examples) {
+                Assert.assertEquals(example.getOutput(), Interpreter.evaluate(program, example.getInput()));
+            }
+        }
+    }
+
+    @Test
+    public void testParallelDeepening() {
+        CFG cfg = extendedGrammar();
+        List<Example> examples = new ArrayList<>();
+        for (int x = -3; x <= 12; x += 3) {
+            for (int y = -4; y <= 4; y += 4) {
+                examples.add(new Example(Map.of("x", x, "y", y, "z", 0), Math.max(x - y, 7)));
+            }
+        }
+        for (CostModel costModel : List.of(CostModel.SIZE, CostModel.ofWeights(Map.of("Max", 2)))) {
+            String expected = new TopDownEnumSynthesizer(costModel, TopDownEnumSynthesizer.Search.ITERATIVE_DEEPENING)
+                    .synthesize(cfg, examples).toString();
+            // whatever the scheduling, the workers return the program found first by the sequential search
+            for (int run = 0; run < 5; ++run) {
+                Assert.assertEquals(expected, new TopDownEnumSynthesizer(costModel,
+                        TopDownEnumSynthesizer.Search.ITERATIVE_DEEPENING, 100, 4).synthesize(cfg, examples)
+                        .toString());
+            }
+        }
+    }
+
+    @Test
+    public void testIntervalPruning() {
+        // E ::= Max(E, E) | x | 1 only derives values of at least min(x, 1)
+        NonTerminal e = new NonTerminal("E");
+        Map<NonTerminal, List<Production>> symbolToProductions = new HashMap<>();
+        symbolToProductions.put(e, List.of(
+                new Production(e, new Terminal("Max"), List.of(e, e)),
+                new Production(e, new Terminal("x"), Collections.emptyList()),
+                new Production(e, new Terminal("1"), Collections.emptyList())));
+        CFG cfg = new CFG(e, symbolToProductions);
+        List<Example> examples = new ArrayList<>();
+        for (int x = 0; x <= 4; ++x) {
+            examples.add(new Example(Map.of("x", x, "y", 0, "z", 0), -1));
+        }
+        IntervalAnalysis intervals = new IntervalAnalysis(cfg, new ExampleTable(examples));
+        Assert.assertFalse(intervals.mayReach(new ASTNode(e, Collections.emptyList())));
+        // every partial program is pruned, so the search ends instead of filling the worklist
+        Assert.assertNull(new TopDownEnumSynthesizer().synthesize(cfg, examples));
+        for (int x = 0; x <= 4; ++x) {
+            examples.set(x, new Example(Map.of("x", x, "y", 0, "z", 0), x + 1));
+        }
+        Assert.assertTrue(new IntervalAnalysis(cfg, new ExampleTable(examples)).mayReach(
+                new ASTNode(new Terminal("Add"), List.of(leaf("x"), new ASTNode(e, Collections.emptyList())))));
+        Assert.assertFalse(new IntervalAnalysis(cfg, new ExampleTable(examples)).mayReach(
+                new ASTNode(new Terminal("Add"), List.of(leaf("x"), leaf("x")))));
+    }
+
+    @Test
+    public void testIntervalOverflow() {
+        // E ::= Multiply(E, E) | x, where 65536 * 65536 wraps around to 0
+        NonTerminal e = new NonTerminal("E");
+        Map<NonTerminal, List<Production>> symbolToProductions = new HashMap<>();
+        symbolToProductions.put(e, List.of(
+                new Production(e, new Terminal("Multiply"), List.of(e, e)),
+                new Production(e, new Terminal("x"), Collections.emptyList())));
+        CFG cfg = new CFG(e, symbolToProductions);
+        List<Example> examples = List.of(
+                new Example(Map.of("x", 65536, "y", 0, "z", 0), 0),
+                new Example(Map.of("x", 0, "y", 0, "z", 0), 0));
+        Assert.assertTrue(new IntervalAnalysis(cfg, new ExampleTable(examples)).mayReach(
+                new ASTNode(new Terminal("Multiply"), List.of(leaf("x"), leaf("x")))));
+        Program program = new TopDownEnumSynthesizer().synthesize(cfg, examples);
+        Assert.assertEquals("Multiply(x, x)", program.toString());
+        Assert.assertEquals(0, Interpreter.evaluate(program, examples.get(0).getInput()));
+    }
+
+    @Test
+    public void testGrammarAnalysis() {
+        CFG cfg = extendedGrammar();
+        GrammarAnalysis analysis = new GrammarAnalysis(cfg);
+        NonTerminal e = cfg.getStartSymbol();
+        NonTerminal b = cfg.getNonTerminal(1);
+        Assert.assertTrue(analysis.isReachable(b) && analysis.isProductive(b));
+        Assert.assertEquals(1, analysis.minDepth(e));
+        Assert.assertEquals(2, analysis.minDepth(b));
+        Assert.assertEquals(6, analysis.minSize(cfg.getProductions(e).get(0)));
+        // x, y, 7, then Subtract and Max of two of them
+        Assert.assertArrayEquals(new long[]{0, 3, 0, 18}, analysis.countPrograms(e, 3));
+        Assert.assertArrayEquals(new long[]{0, 0, 0, 9}, analysis.countPrograms(b, 3));
+        List<Example> examples = new ArrayList<>();
+        for (int x = -3; x <= 12; x += 3) {
+            examples.add(new Example(Map.of("x", x, "y", 1, "z", 0), Math.max(x - 1, 7)));
+        }
+        // Max(Subtract(x, y), 7) has size 5
+        Assert.assertNull(new TopDownEnumSynthesizer(CostModel.SIZE, TopDownEnumSynthesizer.Search.BEST_FIRST,
+                1000, 1, 4).synthesize(cfg, examples));
+        Assert.assertNotNull(new TopDownEnumSynthesizer(CostModel.SIZE, TopDownEnumSynthesizer.Search.BEST_FIRST,
+                1000, 1, 5).synthesize(cfg, examples));
+    }
+
+    @Test
+    public void testSubtermTable() {
+        CFG cfg = extendedGrammar();
+        List<Example> examples = new ArrayList<>();
+        for (int x = -3; x <= 12; x += 3) {
+            examples.add(new Example(Map.of("x", x, "y", 1 - x, "z", 0), 0));
+        }
+        SubtermTable subterms = new SubtermTable(cfg, new ExampleTable(examples), CostModel.SIZE,
+                new GrammarAnalysis(cfg), false);
+        List<Production> prods = cfg.getProductions(cfg.getStartSymbol());
+        int e = cfg.getId(cfg.getStartSymbol());
+        DerivedNode x = new DerivedNode(prods.get(3), e, List.of());
+        DerivedNode y = new DerivedNode(prods.get(4), e, List.of());
+        DerivedNode max = new DerivedNode(prods.get(2), e, List.of(x, y));
+        Assert.assertTrue(subterms.isCanonical(max));
+        // equivalent and not cheaper than the first one found
+        Assert.assertFalse(subterms.isCanonical(new DerivedNode(prods.get(2), e, List.of(y, x))));
+        Assert.assertTrue(subterms.isCanonical(max));
+        Assert.assertEquals("Subtract(x, x)", new TopDownEnumSynthesizer().synthesize(cfg, examples).toString());
+    }
+
+    @Test
+    public void testSubtermTableOverloads() {
+        // E ::= Add(E, F) | Add(F, F) | x and F ::= 1 | 2: the operator alone does not tell the argument symbols
+        NonTerminal e = new NonTerminal("E");
+        NonTerminal f = new NonTerminal("F");
+        Map<NonTerminal, List<Production>> symbolToProductions = new HashMap<>();
+        symbolToProductions.put(e, List.of(
+                new Production(e, new Terminal("Add"), List.of(e, f)),
+                new Production(e, new Terminal("Add"), List.of(f, f)),
+                new Production(e, new Terminal("x"), Collections.emptyList())));
+        symbolToProductions.put(f, List.of(
+                new Production(f, new Terminal("1"), Collections.emptyList()),
+                new Production(f, new Terminal("2"), Collections.emptyList())));
+        CFG cfg = new CFG(e, symbolToProductions);
+        List<Example> examples = new ArrayList<>();
+        for (int x = 0; x <= 4; ++x) {
+            examples.add(new Example(Map.of("x", x, "y", 0, "z", 0), x + 3));
+        }
+        Assert.assertEquals("Add(Add(x, 1), 2)", new TopDownEnumSynthesizer().synthesize(cfg, examples).toString());
+    }
+
+    @Test
+    public void testSubtermTableMaxSize() {
+        CFG cfg = extendedGrammar();
+        List<Example> examples = new ArrayList<>();
+        for (int y = 0; y <= 12; ++y) {
+            examples.add(new Example(Map.of("x", y - 7, "y", y, "z", 0), -7));
+        }
+        List<Production> prods = cfg.getProductions(cfg.getStartSymbol());
+        int e = cfg.getId(cfg.getStartSymbol());
+        DerivedNode x = new DerivedNode(prods.get(3), e, List.of());
+        DerivedNode y = new DerivedNode(prods.get(4), e, List.of());
+        DerivedNode seven = new DerivedNode(prods.get(5), e, List.of());
+        // Subtract(y, 7) is equivalent to x, cheaper but larger
+        DerivedNode cheaper = new DerivedNode(prods.get(1), e, List.of(y, seven));
+        CostModel costModel = CostModel.ofWeights(Map.of("x", 10));
+        SubtermTable byCost = new SubtermTable(cfg, new ExampleTable(examples), costModel,
+                new GrammarAnalysis(cfg), false);
+        Assert.assertTrue(byCost.isCanonical(cheaper));
+        Assert.assertFalse(byCost.isCanonical(x));
+        SubtermTable bySize = new SubtermTable(cfg, new ExampleTable(examples), costModel,
+                new GrammarAnalysis(cfg), true);
+        Assert.assertTrue(bySize.isCanonical(cheaper));
+        Assert.assertTrue(bySize.isCanonical(x));
+        Assert.assertTrue(bySize.isCanonical(cheaper));
+        // Max(x, x) is beaten by both
+        Assert.assertFalse(bySize.isCanonical(new DerivedNode(prods.get(2), e, List.of(x, x))));
+        Assert.assertEquals(bySize.size(), byCost.size() + 1);
+    }
+
+    @Test
+    public void testPortfolio() {
+        CFG cfg = extendedGrammar();
+        List<Example> examples = new ArrayList<>();
+        for (int x = -3; x <= 12; x += 3) {
+            examples.add(new Example(Map.of("x", x, "y", 1, "z", 0), Math.max(x - 1, 7)));
+        }
+        // one synthesizer only stops when interrupted, another one returns a wrong program
+        ISynthesizer stuck = (grammar, specs) -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.onSpinWait();
+            }
+            return null;
+        };
+        ISynthesizer wrong = (grammar, specs) -> new Program(leaf("x"));
+        Program program = new PortfolioSynthesizer(stuck, wrong, new TopDownEnumSynthesizer())
+                .synthesize(cfg, examples);
+        Assert.assertNotNull(program);
+        for (Example example : examples) {
+            Assert.assertEquals(example.getOutput(), Interpreter.evaluate(program, example.getInput()));
+        }
+        Assert.assertNull(new PortfolioSynthesizer(wrong).synthesize(cfg, examples));
+    }
+
+    @Test(timeout = 10000)
+    public void testPortfolioInfeasible() {
+        CFG cfg = extendedGrammar();
+        // the same input with two outputs
+        List<Example> examples = List.of(
+                new Example(Map.of("x", 1, "y", 2, "z", 3), 5),
+                new Example(Map.of("x", 1, "y", 2, "z", 3), 6));
+        ISynthesizer stuck = (grammar, specs) -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.onSpinWait();
+            }
+            return null;
+        };
+        ISynthesizer timedOut = new ISynthesizer() {
+            @Override
+            public Program synthesize(CFG grammar, List<Example> specs) {
+                return null;
+            }
+
+            @Override
+            public SynthesisResult synthesize(CFG grammar, List<Example> specs, Budget budget) {
+                return new SynthesisResult(SynthesisResult.Status.TIMED_OUT, null);
+            }
+        };
+        // the proof of infeasibility ends the race, and wins over the budget of the other synthesizers
+        Assert.assertEquals(SynthesisResult.Status.INFEASIBLE, new PortfolioSynthesizer(stuck,
+                new DivAndConSynthesizer()).synthesize(cfg, examples, Budget.unlimited()).getStatus());
+        Assert.assertEquals(SynthesisResult.Status.INFEASIBLE, new PortfolioSynthesizer(timedOut,
+                new DivAndConSynthesizer(), new TopDownEnumSynthesizer()).synthesize(cfg, examples,
+                Budget.ofTimeout(Duration.ofSeconds(5))).getStatus());
+        // without a proof, running out of time ranks above a synthesizer giving up
+        Assert.assertEquals(SynthesisResult.Status.TIMED_OUT, new PortfolioSynthesizer(timedOut,
+                (grammar, specs) -> null).synthesize(cfg, examples, Budget.unlimited()).getStatus());
+    }
+
+    @Test(timeout = 20000)
+    public void testInfeasibleOverflow() {
+        // E ::= Add(E, E) | Multiply(E, E) | x | y | z | 1, where no operator goes below its arguments unless it wraps
+        NonTerminal e = new NonTerminal("E");
+        Map<NonTerminal, List<Production>> symbolToProductions = new HashMap<>();
+        symbolToProductions.put(e, List.of(
+                new Production(e, new Terminal("Add"), List.of(e, e)),
+                new Production(e, new Terminal("Multiply"), List.of(e, e)),
+                new Production(e, new Terminal("x"), Collections.emptyList()),
+                new Production(e, new Terminal("y"), Collections.emptyList()),
+                new Production(e, new Terminal("z"), Collections.emptyList()),
+                new Production(e, new Terminal("1"), Collections.emptyList())));
+        CFG cfg = new CFG(e, symbolToProductions);
+        // every output is below every leaf, and 65536 * 65536 wraps around to 0
+        List<Example> examples = List.of(
+                new Example(Map.of("x", 65536, "y", 65536, "z", 65536), 0),
+                new Example(Map.of("x", 65536, "y", 131072, "z", 65536), 0));
+        for (ISynthesizer synthesizer : List.of(new DivAndConSynthesizer(),
+                new PortfolioSynthesizer(new DivAndConSynthesizer(), new TopDownEnumSynthesizer()))) {
+            SynthesisResult result = synthesizer.synthesize(cfg, examples, Budget.unlimited());
+            Assert.assertEquals(SynthesisResult.Status.SOLVED, result.getStatus());
+            for (Example example : examples) {
+                Assert.assertEquals(0, Interpreter.evaluate(result.getProgram(), example.getInput()));
+            }
+        }
+    }
+
+    @Test
+    public void testBudget() {
+        CFG cfg = extendedGrammar();
+        List<Example> examples = new ArrayList<>();
+        for (int x = 1; x <= 5; ++x) {
+            // the grammar has no multiplication
+            examples.add(new Example(Map.of("x", x, "y", x + 2, "z", 0), x * (x + 2)));
+        }
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        SynthesisResult cancelled = new DivAndConSynthesizer().synthesize(cfg, examples,
+                new Budget(null, Long.MAX_VALUE, token));
+        Assert.assertEquals(SynthesisResult.Status.CANCELLED, cancelled.getStatus());
+        Assert.assertNotNull(cancelled.getProgram());
+        Assert.assertEquals(SynthesisResult.Status.OUT_OF_MEMORY, new DivAndConSynthesizer()
+                .synthesize(cfg, examples, new Budget(null, 100, new CancellationToken())).getStatus());
+        Assert.assertEquals(SynthesisResult.Status.TIMED_OUT, new TopDownEnumSynthesizer()
+                .synthesize(cfg, examples, Budget.ofTimeout(Duration.ZERO)).getStatus());
+        SynthesisResult infeasible = new TopDownEnumSynthesizer(CostModel.SIZE,
+                TopDownEnumSynthesizer.Search.BEST_FIRST, 1000, 1, 3).synthesize(cfg, examples, Budget.unlimited());
+        Assert.assertEquals(SynthesisResult.Status.EXHAUSTED, infeasible.getStatus());
+        Assert.assertNotNull(infeasible.getProgram());
+    }
+
+    @Test(timeout = 20000)
+    public void testParallelInterrupt() throws InterruptedException {
+        CFG cfg = extendedGrammar();
+        List<Example> examples = new ArrayList<>();
+        for (int x = 1; x <= 5; ++x) {
+            // far out of the reach of the programs grown in a few seconds
+            examples.add(new Example(Map.of("x", x, "y", x + 2, "z", 0), 999999937));
+        }
+        // interrupted in the middle of a long parallel step: the workers of the pool only learn of the interrupt of
+        // the calling thread through the synthesizer
+        for (DivAndConSynthesizer.GrowthOrder order : DivAndConSynthesizer.GrowthOrder.values()) {
+            SynthesisResult[] result = new SynthesisResult[1];
+            Thread thread = new Thread(() -> result[0] = new DivAndConSynthesizer(4, order)
+                    .synthesize(cfg, examples, Budget.unlimited()));
+            thread.start();
+            Thread.sleep(2000);
+            thread.interrupt();
+            thread.join();
+            Assert.assertEquals(SynthesisResult.Status.CANCELLED, result[0].getStatus());
+        }
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        CFG cfg = extendedGrammar();
+        List<IntBinaryOperator> functions = List.of(
+                (x, y) -> x < 9 ? 7 : y - 7,
+                (x, y) -> y < 3 ? 7 : x,
+                (x, y) -> y < 4 ? x - y : 7);
+        List<List<Example>> problems = new ArrayList<>();
+        for (IntBinaryOperator function : functions) {
+            List<Example> examples = new ArrayList<>();
+            for (int x = -3; x <= 12; x += 3) {
+                for (int y = -4; y <= 4; y += 2) {
+                    examples.add(new Example(Map.of("x", x, "y", y, "z", 0), function.applyAsInt(x, y)));
+                }
+            }
+            problems.add(examples);
+        }
+        // the parallel growth adds and replaces programs and checks them for a division in the sequential order
+        for (DivAndConSynthesizer.GrowthOrder order : DivAndConSynthesizer.GrowthOrder.values()) {
+            for (List<Example> problem : problems) {
+                Program sequential = new DivAndConSynthesizer(1, order).synthesize(cfg, problem);
+                Assert.assertNotNull(sequential);
+                for (int run = 0; run < 3; ++run) {
+                    Program parallel = new DivAndConSynthesizer(4, order).synthesize(cfg, problem);
+                    Assert.assertEquals(sequential.getRoot(), parallel.getRoot());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testExtendedGrammar() {
+        CFG cfg = extendedGrammar();
+        List<Example> examples = new ArrayList<>();
+        for (int x = -3; x <= 12; x += 3) {
+            for (int y = -4; y <= 4; y += 2) {
+                examples.add(new Example(Map.of("x", x, "y", y, "z", 0), Math.max(x - y, 7)));
+            }
+        }
+        Program program = new DivAndConSynthesizer().synthesize(cfg, examples);
+        Assert.assertNotNull(program);
+        for (Example example : examples) {
+            Assert.assertEquals(example.getOutput(), Interpreter.evaluate(program, example.getInput()));
+        }
+    }
+
+    @Test
+    public void testSizeOrder() {
+        CFG cfg = extendedGrammar();
+        List<Example> examples = new ArrayList<>();
+        for (int x = -3; x <= 12; x += 3) {
+            for (int y = -4; y <= 4; y += 2) {
+                examples.add(new Example(Map.of("x", x, "y", y, "z", 0), x - y + 7));
+            }
+        }
+        Program program = new DivAndConSynthesizer(1, DivAndConSynthesizer.GrowthOrder.SIZE)
+                .synthesize(cfg, examples);
+        Assert.assertNotNull(program);
+        // the smallest programs have size 5, e.g. Subtract(x, Subtract(y, 7))
+        Assert.assertEquals(5, program.getRoot().size());
+        for (Example example : examples) {
+            Assert.assertEquals(example.getOutput(), Interpreter.evaluate(program, example.getInput()));
+        }
+    }
+
+    private static CFG extendedGrammar() {
+        // E ::= Ite(B, E, E) | Subtract(E, E) | Max(E, E) | x | y | 7
+        // B ::= Lt(E, E) | Not(B)
+        NonTerminal e = new NonTerminal("E");
+        NonTerminal b = new NonTerminal("B");
+        Map<NonTerminal, List<Production>> symbolToProductions = new HashMap<>();
+        symbolToProductions.put(e, List.of(
+                new Production(e, new Terminal("Ite"), List.of(b, e, e)),
+                new Production(e, new Terminal("Subtract"), List.of(e, e)),
+                new Production(e, new Terminal("Max"), List.of(e, e)),
+                new Production(e, new Terminal("x"), Collections.emptyList()),
+                new Production(e, new Terminal("y"), Collections.emptyList()),
+                new Production(e, new Terminal("7"), Collections.emptyList())));
+        symbolToProductions.put(b, List.of(
+                new Production(b, new Terminal("Lt"), List.of(e, e)),
+                new Production(b, new Terminal("Not"), List.of(b))));
+        return new CFG(e, symbolToProductions);
+    }
+}